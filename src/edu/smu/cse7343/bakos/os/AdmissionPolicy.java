@@ -0,0 +1,14 @@
+/*
+    AdmissionPolicy.java
+    @author Yong Joseph Bakos
+
+    An enumeration of the orders in which the long-term scheduler admits new processes that
+    are waiting for memory.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+public enum AdmissionPolicy {
+    FIFO,
+    SMALLEST_FIRST;
+}
@@ -0,0 +1,249 @@
+/*
+    ArenaAllocator.java
+    @author Yong Joseph Bakos
+
+    This class splits memory into arenas: equal, contiguous ranges that each have their own
+    free list and their own lock, as in jemalloc or tcmalloc. Each thread allocates from a
+    home arena, assigned round-robin the first time it allocates, so concurrent callers
+    spread evenly over the arenas and rarely contend for the same lock. They only fall back
+    to the other arenas when their own has no hole large enough. A segment never spans two
+    arenas, so it is always freed back to the arena it came from.
+
+    With a single arena this is the plain free list of the visual simulation.
+
+    Freed words are zeroed later, under the arena's lock, either by `zeroDirty` on behalf of
+    a background MemoryZeroer or when allocated by a caller that needs zeroed memory.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+public class ArenaAllocator {
+
+    final FreeList[] arenas;
+    private final ReentrantLock[] locks;
+    private final int arenaSize;
+    private final int maximumSegment;
+    private final AtomicInteger nextHome = new AtomicInteger();
+    private final ThreadLocal<Integer> home = new ThreadLocal<Integer>() {
+        protected Integer initialValue() {
+            return Integer.valueOf(nextHome.getAndIncrement());
+        }
+    };
+
+    public ArenaAllocator(Memory memory, int arenaCount) {
+        int memorySize = memory.totalSize();
+        arenaSize = (memorySize + arenaCount - 1) / arenaCount;
+        maximumSegment = Math.min(memorySize, arenaSize);
+        arenas = new FreeList[arenaCount];
+        locks = new ReentrantLock[arenaCount];
+        for (int i = 0; i < arenaCount; ++i) {
+            int base = Math.min(memorySize, i * arenaSize);
+            arenas[i] = new FreeList(memory, base, Math.min(memorySize, base + arenaSize) - base);
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    // Allocates from the calling thread's home arena if it can, and otherwise from the first
+    // arena with a large enough hole, trying uncontended arenas before waiting on busy ones.
+    // Returns -1 if no arena has a large enough hole. If `zeroed`, the words allocated are
+    // zero, and already zeroed holes are preferred within each arena.
+    public int alloc(int size, MemoryAllocationAlgorithm algorithm, boolean zeroed) {
+        int home = this.home.get().intValue() % arenas.length;
+        for (int i = 0; i < arenas.length; ++i) {
+            int arena = (home + i) % arenas.length;
+            if (!locks[arena].tryLock()) continue;
+            try {
+                int base = arenas[arena].alloc(size, algorithm, zeroed);
+                if (base != -1) return base;
+            } finally {
+                locks[arena].unlock();
+            }
+        }
+        for (int i = 0; i < arenas.length; ++i) {
+            int arena = (home + i) % arenas.length;
+            locks[arena].lock();
+            try {
+                int base = arenas[arena].alloc(size, algorithm, zeroed);
+                if (base != -1) return base;
+            } finally {
+                locks[arena].unlock();
+            }
+        }
+        return -1;
+    }
+
+    public void free(int base, int size) {
+        int arena = arenaOf(base);
+        locks[arena].lock();
+        try {
+            arenas[arena].free(base, size);
+        } finally {
+            locks[arena].unlock();
+        }
+    }
+
+    // Extends the segment at `base` into the hole at `address` (just past its end), if that
+    // hole is in the same arena and large enough.
+    public boolean extend(int base, int address, int size, boolean zeroed) {
+        int arena = arenaOf(base);
+        if (arenaOf(address) != arena) return false;
+        locks[arena].lock();
+        try {
+            return arenas[arena].extend(address, size, zeroed);
+        } finally {
+            locks[arena].unlock();
+        }
+    }
+
+    // Zeroes up to `maxWords` dirty free words in each arena that is not busy. Returns the
+    // number of words zeroed, which is 0 once there is nothing left to zero.
+    public int zeroDirty(int maxWords) {
+        int zeroed = 0;
+        for (int i = 0; i < arenas.length; ++i) {
+            if (!locks[i].tryLock()) continue;
+            try {
+                zeroed += arenas[i].zeroDirty(maxWords);
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return zeroed;
+    }
+
+    // The free segments of every arena, as "base->\tsize" lines, for tracing. Each arena is
+    // read under its lock, since other threads may be allocating from it.
+    public List<String> describeSegments() {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < arenas.length; ++i) {
+            locks[i].lock();
+            try {
+                for (Map.Entry<Integer, Integer> segment : arenas[i].segments.entrySet()) {
+                    lines.add(segment.getKey().intValue() + "->\t" + segment.getValue().intValue());
+                }
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return lines;
+    }
+
+    public int arenaCount() {
+        return arenas.length;
+    }
+
+    // The size of the largest segment that could ever be allocated: one whole arena.
+    public int maximumSegment() {
+        return maximumSegment;
+    }
+
+    public int totalFree() {
+        int total = 0;
+        for (int i = 0; i < arenas.length; ++i) {
+            locks[i].lock();
+            try {
+                total += arenas[i].totalFree();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return total;
+    }
+
+    public int largestSegment() {
+        int largest = 0;
+        for (int i = 0; i < arenas.length; ++i) {
+            locks[i].lock();
+            try {
+                largest = Math.max(largest, arenas[i].largestSegment());
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return largest;
+    }
+
+    // Free words that are still dirty, in all arenas.
+    public int dirtyWords() {
+        int total = 0;
+        for (int i = 0; i < arenas.length; ++i) {
+            locks[i].lock();
+            try {
+                total += arenas[i].dirtyWords();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return total;
+    }
+
+    // Free words that are already zeroed, in all arenas.
+    public int preZeroed() {
+        int total = 0;
+        for (int i = 0; i < arenas.length; ++i) {
+            locks[i].lock();
+            try {
+                total += arenas[i].preZeroed();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return total;
+    }
+
+    // Words zeroed so far, and the nanoseconds spent zeroing them, in all arenas.
+    public long[] zeroingTotals() {
+        long[] totals = new long[2];
+        for (int i = 0; i < arenas.length; ++i) {
+            locks[i].lock();
+            try {
+                totals[0] += arenas[i].wordsZeroed;
+                totals[1] += arenas[i].zeroingNanos;
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return totals;
+    }
+
+    public int segmentCount() {
+        int count = 0;
+        for (int i = 0; i < arenas.length; ++i) {
+            locks[i].lock();
+            try {
+                count += arenas[i].segmentCount();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return count;
+    }
+
+    public int[] histogram() {
+        int[] histogram = new int[FreeList.HISTOGRAM_BUCKETS];
+        for (int i = 0; i < arenas.length; ++i) {
+            locks[i].lock();
+            try {
+                int[] arenaHistogram = arenas[i].histogram();
+                for (int bucket = 0; bucket < histogram.length; ++bucket) histogram[bucket] += arenaHistogram[bucket];
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return histogram;
+    }
+
+    // 1 - (largest hole in any arena / free memory in all arenas).
+    public double externalFragmentation() {
+        int total = totalFree();
+        return total == 0 ? 0 : 1.0 - (double)largestSegment() / total;
+    }
+
+    private int arenaOf(int address) {
+        return Math.min(address / arenaSize, arenas.length - 1);
+    }
+
+}
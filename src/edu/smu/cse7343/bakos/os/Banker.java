@@ -0,0 +1,144 @@
+/*
+    Banker.java
+    @author Yong Joseph Bakos
+
+    This class implements the Banker's algorithm for deadlock avoidance. Each process declares
+    the most units of each resource it may ever hold, and a request is only granted if, once
+    granted, there is still some order in which every process could acquire its remaining
+    claims and finish.
+
+    The safety check is the textbook one, but it does not rescan every unfinished process
+    each time a finished one returns its units. For each resource, the processes that need
+    more of it than is available wait in a priority queue ordered by need, and each process
+    counts the resources it is still waiting on. When a finished process returns units of a
+    resource, only the processes that now fit are taken off that resource's queue. The check
+    costs O(C log C) in the total number of claims C, rather than O(n^2 m) for n processes
+    and m resources.
+
+    A process that holds nothing returns nothing when it finishes, and since no claim may
+    exceed the units of its resource, it can always finish after every holder has. So only
+    the processes holding units take part in the search.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.*;
+
+public class Banker {
+
+    HashMap<Integer, HashMap<Integer, Integer>> claims; // pid -> resource id -> maximum units
+
+    // Statistics
+    long safetyChecks;
+    long claimsExamined;
+
+    public Banker() {
+        claims = new HashMap<Integer, HashMap<Integer, Integer>>();
+    }
+
+    // Declares the maximum number of units of a resource the process may hold.
+    public void claim(int pid, int resourceId, int units) {
+        HashMap<Integer, Integer> processClaims = claims.get(Integer.valueOf(pid));
+        if (processClaims == null) {
+            processClaims = new HashMap<Integer, Integer>();
+            claims.put(Integer.valueOf(pid), processClaims);
+        }
+        processClaims.put(Integer.valueOf(resourceId), Integer.valueOf(units));
+    }
+
+    public int claimed(int pid, int resourceId) {
+        HashMap<Integer, Integer> processClaims = claims.get(Integer.valueOf(pid));
+        Integer units = processClaims == null ? null : processClaims.get(Integer.valueOf(resourceId));
+        return units == null ? 0 : units.intValue();
+    }
+
+    // Drops the claims of a process that has terminated.
+    void forget(int pid) {
+        claims.remove(Integer.valueOf(pid));
+    }
+
+    // Returns true if granting one unit of the resource to the process leaves the system in
+    // a safe state.
+    public boolean isSafeToGrant(int pid, Resource requested, Map<Integer, Resource> resources) {
+        ++safetyChecks;
+        HashMap<Integer, Integer> returned = new HashMap<Integer, Integer>(); // resource id -> units of finished processes
+        HashMap<Integer, PriorityQueue<Long>> pending = new HashMap<Integer, PriorityQueue<Long>>(); // resource id -> need << 32 | pid
+        HashMap<Integer, Integer> unmet = new HashMap<Integer, Integer>(); // pid -> resources it needs more of than available
+        ArrayDeque<Integer> finishable = new ArrayDeque<Integer>();
+        int finished = 0;
+        for (Map.Entry<Integer, HashMap<Integer, Integer>> process : claims.entrySet()) {
+            int p = process.getKey().intValue();
+            if (!holdsAny(p, process.getValue(), pid, requested, resources)) {
+                ++finished;
+                continue;
+            }
+            int count = 0;
+            for (Map.Entry<Integer, Integer> claim : process.getValue().entrySet()) {
+                ++claimsExamined;
+                Resource resource = resources.get(claim.getKey());
+                int need = claim.getValue().intValue() - held(p, resource, pid, requested);
+                if (need > available(resource, requested, returned)) {
+                    ++count;
+                    PriorityQueue<Long> queue = pending.get(claim.getKey());
+                    if (queue == null) {
+                        queue = new PriorityQueue<Long>();
+                        pending.put(claim.getKey(), queue);
+                    }
+                    queue.add(Long.valueOf((long)need << 32 | p));
+                }
+            }
+            if (count == 0) finishable.add(process.getKey());
+            else unmet.put(process.getKey(), Integer.valueOf(count));
+        }
+        while (!finishable.isEmpty()) {
+            Integer p = finishable.poll();
+            ++finished;
+            for (Integer resourceId : claims.get(p).keySet()) {
+                Resource resource = resources.get(resourceId);
+                int units = held(p.intValue(), resource, pid, requested);
+                if (units == 0) continue;
+                Integer previous = returned.get(resourceId);
+                returned.put(resourceId, Integer.valueOf(units + (previous == null ? 0 : previous.intValue())));
+                PriorityQueue<Long> queue = pending.get(resourceId);
+                int work = available(resource, requested, returned);
+                while (queue != null && !queue.isEmpty() && (queue.peek().longValue() >>> 32) <= work) {
+                    Integer waiter = Integer.valueOf((int)queue.poll().longValue());
+                    int count = unmet.get(waiter).intValue() - 1;
+                    unmet.put(waiter, Integer.valueOf(count));
+                    if (count == 0) finishable.add(waiter);
+                }
+            }
+        }
+        return finished == claims.size();
+    }
+
+    private static boolean holdsAny(int p, HashMap<Integer, Integer> processClaims, int pid, Resource requested,
+                                    Map<Integer, Resource> resources) {
+        if (p == pid) return true;
+        for (Integer resourceId : processClaims.keySet()) {
+            if (resources.get(resourceId).held(p) > 0) return true;
+        }
+        return false;
+    }
+
+    // Units of the resource the process holds, as if the request had been granted.
+    private static int held(int p, Resource resource, int pid, Resource requested) {
+        return resource.held(p) + (p == pid && resource == requested ? 1 : 0);
+    }
+
+    // Units of the resource available, as if the request had been granted and the finished
+    // processes had returned what they hold.
+    private static int available(Resource resource, Resource requested, HashMap<Integer, Integer> returned) {
+        Integer units = returned.get(Integer.valueOf(resource.id));
+        return resource.available - (resource == requested ? 1 : 0) + (units == null ? 0 : units.intValue());
+    }
+
+    public long safetyChecks() {
+        return safetyChecks;
+    }
+
+    public double meanClaimsExamined() {
+        return safetyChecks == 0 ? 0 : (double)claimsExamined / safetyChecks;
+    }
+
+}
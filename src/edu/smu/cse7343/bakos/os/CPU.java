@@ -3,7 +3,8 @@
     @author Yong Joseph Bakos
 
     This class naively represents a CPU with a program counter, stack pointer and
-    register data.
+    register data. With an optional cache hierarchy, each step of a program also reads and
+    writes words of its memory segment, between the base and limit registers.
 
     Upon instantiation, a CPU will be assumed to execute the kernel idle process.
 */
@@ -15,14 +16,17 @@ import processing.core.*;
 public class CPU {
 
     public static final int NUMBER_OF_REGISTERS = 10;
+    public static final int MESSAGE_REGISTER = 7; // Receives the data of a message queue receive
+    public static final int MEMORY_ACCESSES_PER_CYCLE = 4; // The last of which is a write
     public int programCounter = 0;
-    public int cycleCount = 0;
+    public long cycleCount = 0;
     public int baseRegister = 0;
     public int limitRegister = 0;
     public float[] registers = new float[NUMBER_OF_REGISTERS];
     public boolean isIdle = true;
 
     public Program currentProgram;
+    public CacheHierarchy cache; // null if memory access is not modeled
 
     public CPU() {
     }
@@ -42,6 +46,19 @@ public class CPU {
             registers[4] = currentProgram.velocity.y;
             registers[5] = currentProgram.location.x;
             registers[6] = currentProgram.location.y;
+            if (cache != null) accessMemory();
+        }
+    }
+
+    // Simulates the memory traffic of one program step: a sequential sweep through the
+    // program's segment, which wraps around at the limit register. An empty segment has no
+    // memory to touch.
+    private void accessMemory() {
+        int segmentSize = limitRegister - baseRegister + 1;
+        if (segmentSize <= 0) return;
+        for (int i = 0; i < MEMORY_ACCESSES_PER_CYCLE; ++i) {
+            int offset = (int)(((long)programCounter * MEMORY_ACCESSES_PER_CYCLE + i) % segmentSize);
+            cache.access(baseRegister + offset, i == MEMORY_ACCESSES_PER_CYCLE - 1);
         }
     }
 
@@ -52,6 +69,12 @@ public class CPU {
         baseRegister = pcb.memoryBaseAddress;
         limitRegister = pcb.memoryLimitAddress;
         registers = pcb.registers.clone();
+        restoreProgram();
+        if (cache != null) cache.contextSwitch(pcb.pid);
+    }
+
+    // Rebuild the executing program from the data registers.
+    void restoreProgram() {
         currentProgram = new Program(registers[5], registers[6], registers[3], registers[4], registers[2], registers[1], Float.floatToRawIntBits(registers[0]));
     }
 
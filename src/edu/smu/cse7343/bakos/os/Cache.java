@@ -0,0 +1,120 @@
+/*
+    Cache.java
+    @author Yong Joseph Bakos
+
+    This class represents one level of a set-associative CPU cache with least-recently-used
+    replacement. It models which lines are cached, not their data: an access is a hit or a
+    miss, misses are filled from the next level (or from Memory, for the last level), and
+    evicting a line that has been written counts as a write-back to the next level. The next
+    level caches a line written back to it, but counts it apart from its hits and misses, so
+    that its hit rate only reflects the accesses that missed in the level above.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+public class Cache {
+
+    public final String name;
+    private final int lineSize;      // in words
+    private final int sets;
+    private final int ways;
+    private final Cache next;        // null if the next level is Memory
+    private final long[] tags;       // sets * ways entries, -1 if invalid
+    private final long[] lastUsed;   // LRU clock value of each entry
+    private final boolean[] dirty;
+    private long clock;
+
+    long hits;
+    long misses;
+    long writeBacks;
+    long writeBacksReceived; // From the level above
+    boolean lastFillHit; // Whether the last miss hit in the next level
+
+    // Size and line size are in words, and must be divisible into `ways` sets of whole lines.
+    public Cache(String name, int size, int lineSize, int ways, Cache next) {
+        if (size % (lineSize * ways) != 0) throw new IllegalArgumentException(name + ": size must be a multiple of line size * ways");
+        this.name = name;
+        this.lineSize = lineSize;
+        this.ways = ways;
+        this.sets = size / (lineSize * ways);
+        this.next = next;
+        tags = new long[sets * ways];
+        lastUsed = new long[sets * ways];
+        dirty = new boolean[sets * ways];
+        java.util.Arrays.fill(tags, -1);
+    }
+
+    // Reads or writes the word at an address. Returns true on a hit in this level.
+    public boolean access(int address, boolean write) {
+        return access(address, write, true);
+    }
+
+    // Caches a dirty line written back from the level above, without counting a hit or miss.
+    private void receiveWriteBack(int address) {
+        ++writeBacksReceived;
+        access(address, true, false);
+    }
+
+    private boolean access(int address, boolean write, boolean counted) {
+        long line = address / lineSize;
+        int set = (int)(line % sets);
+        int first = set * ways;
+        int victim = first;
+        ++clock;
+        for (int entry = first; entry < first + ways; ++entry) {
+            if (tags[entry] == line) {
+                if (counted) ++hits;
+                lastUsed[entry] = clock;
+                dirty[entry] |= write;
+                return true;
+            }
+            if (tags[entry] == -1 || (tags[victim] != -1 && lastUsed[entry] < lastUsed[victim])) victim = entry;
+        }
+        if (counted) {
+            ++misses;
+            lastFillHit = next != null && next.access(address, false);
+        }
+        evict(victim);
+        tags[victim] = line;
+        lastUsed[victim] = clock;
+        dirty[victim] = write;
+        return false;
+    }
+
+    // Invalidates every line, writing back those that are dirty.
+    public void flush() {
+        for (int entry = 0; entry < tags.length; ++entry) {
+            evict(entry);
+            tags[entry] = -1;
+        }
+    }
+
+    private void evict(int entry) {
+        if (tags[entry] != -1 && dirty[entry]) {
+            ++writeBacks;
+            if (next != null) next.receiveWriteBack((int)(tags[entry] * lineSize));
+        }
+        dirty[entry] = false;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long writeBacks() {
+        return writeBacks;
+    }
+
+    public long writeBacksReceived() {
+        return writeBacksReceived;
+    }
+
+    public double hitRate() {
+        return hits + misses == 0 ? 0 : (double)hits / (hits + misses);
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+    CacheHierarchy.java
+    @author Yong Joseph Bakos
+
+    This class places an L1 and an L2 cache between the CPU and Memory. The CPU reports each
+    context switch, and the hierarchy either flushes both levels (as a virtually-tagged cache
+    would) or keeps them warm. Hits and misses are attributed to the executing process, and
+    also counted for each scheduler quantum, to show how frequent context switches hurt
+    locality. Only the running mean of the quantum L1 hit rates is kept, so that memory does
+    not grow with the number of context switches.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.*;
+
+public class CacheHierarchy {
+
+    public final Cache l1;
+    public final Cache l2;
+    public final boolean flushOnContextSwitch;
+
+    private HashMap<Integer, CacheStatistics> processStatistics;
+    private CacheStatistics currentProcess;
+    private CacheStatistics currentQuantum;
+    private double quantumL1HitRates; // Sum over the finished quanta that touched memory
+    private long quanta;              // The number of those quanta
+
+    // Sizes and line sizes are in words.
+    public CacheHierarchy(int l1Size, int l1Ways, int l2Size, int l2Ways, int lineSize, boolean flushOnContextSwitch) {
+        l2 = new Cache("L2", l2Size, lineSize, l2Ways, null);
+        l1 = new Cache("L1", l1Size, lineSize, l1Ways, l2);
+        this.flushOnContextSwitch = flushOnContextSwitch;
+        processStatistics = new HashMap<Integer, CacheStatistics>();
+    }
+
+    // A small L1 and a larger L2, both with 8-word lines.
+    public CacheHierarchy(boolean flushOnContextSwitch) {
+        this(256, 4, 2048, 8, 8, flushOnContextSwitch);
+    }
+
+    // Starts a new quantum for a process being dispatched.
+    public void contextSwitch(int pid) {
+        if (flushOnContextSwitch) {
+            l1.flush();
+            l2.flush();
+        }
+        currentProcess = processStatistics.get(Integer.valueOf(pid));
+        if (currentProcess == null) {
+            currentProcess = new CacheStatistics(pid);
+            processStatistics.put(Integer.valueOf(pid), currentProcess);
+        }
+        if (currentQuantum != null && currentQuantum.accesses() > 0) {
+            quantumL1HitRates += currentQuantum.l1HitRate();
+            ++quanta;
+        }
+        currentQuantum = new CacheStatistics(pid);
+    }
+
+    // Reads or writes the word at an address on behalf of the executing process.
+    public void access(int address, boolean write) {
+        boolean l1Hit = l1.access(address, write);
+        if (currentProcess == null) return;
+        if (l1Hit) {
+            ++currentProcess.l1Hits;
+            ++currentQuantum.l1Hits;
+        } else {
+            ++currentProcess.l1Misses;
+            ++currentQuantum.l1Misses;
+            if (l1.lastFillHit) {
+                ++currentProcess.l2Hits;
+                ++currentQuantum.l2Hits;
+            } else {
+                ++currentProcess.l2Misses;
+                ++currentQuantum.l2Misses;
+            }
+        }
+    }
+
+    public Collection<CacheStatistics> processStatistics() {
+        return processStatistics.values();
+    }
+
+    // The mean of the L1 hit rates of every quantum, including the current one, in which the
+    // running process touched memory.
+    public double meanQuantumL1HitRate() {
+        double sum = quantumL1HitRates;
+        long count = quanta;
+        if (currentQuantum != null && currentQuantum.accesses() > 0) {
+            sum += currentQuantum.l1HitRate();
+            ++count;
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+    CacheStatistics.java
+    @author Yong Joseph Bakos
+
+    This class counts cache hits and misses at each level for one process, or for one
+    scheduler quantum of one process.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+public class CacheStatistics {
+
+    public final int pid;
+    public long l1Hits;
+    public long l1Misses;
+    public long l2Hits;
+    public long l2Misses;
+
+    public CacheStatistics(int pid) {
+        this.pid = pid;
+    }
+
+    public long accesses() {
+        return l1Hits + l1Misses;
+    }
+
+    public double l1HitRate() {
+        return accesses() == 0 ? 0 : (double)l1Hits / accesses();
+    }
+
+    // Of the accesses that missed in L1.
+    public double l2HitRate() {
+        return l1Misses == 0 ? 0 : (double)l2Hits / l1Misses;
+    }
+
+    public String toString() {
+        return "pid " + pid + ": " + accesses() + " accesses, L1 " + String.format("%.3f", l1HitRate())
+            + ", L2 " + String.format("%.3f", l2HitRate());
+    }
+
+}
@@ -0,0 +1,446 @@
+/*
+    Checkpoint.java
+    @author Yong Joseph Bakos
+
+    This class saves and restores the complete state of a simulated system: CPU registers,
+    the contents of memory, the free list (and which free words are not yet zeroed) and
+    shared segment reference counts, shared memory and message queues, resources with their
+    holders, waiters and claims, mutexes and semaphores, the ready, wait and admission queues
+    and their PCBs, the next available pid and the kernel's random number generator. A
+    system can be warmed up once, and then many experiments can be started from the same
+    checkpoint.
+
+    The file is a small header, a block of kernel metadata, and then the raw memory image.
+    Memory is written through a file channel in large chunks, and restored by mapping the
+    file and bulk-transferring each mapped chunk straight into the memory array.
+
+    A checkpoint must be saved from the kernel thread, while no other thread is submitting
+    system calls and no MemoryZeroer is running.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class Checkpoint {
+
+    private static final int MAGIC = 0x4F53434B; // "OSCK"
+    private static final int VERSION = 13;
+    private static final int HEADER_SIZE = 12;   // magic, version, metadata length
+    private static final int WRITE_CHUNK_SIZE = 1 << 20;
+    private static final int MAP_CHUNK_FLOATS = 1 << 28; // 1 GB per mapping
+    private static final ByteOrder MEMORY_BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public final CPU cpu;
+    public final Memory memory;
+    public final OperatingSystem os;
+
+    private Checkpoint(CPU cpu, Memory memory, OperatingSystem os) {
+        this.cpu = cpu;
+        this.memory = memory;
+        this.os = os;
+    }
+
+    public static void save(OperatingSystem os, Path path) throws IOException {
+        byte[] metadata = writeMetadata(os);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(metadata.length).flip();
+            writeFully(channel, header);
+            writeFully(channel, ByteBuffer.wrap(metadata));
+            float[] words = os.memory.registers;
+            ByteBuffer chunk = ByteBuffer.allocateDirect(WRITE_CHUNK_SIZE).order(MEMORY_BYTE_ORDER);
+            for (int offset = 0; offset < words.length; ) {
+                int count = Math.min(WRITE_CHUNK_SIZE / 4, words.length - offset);
+                chunk.clear();
+                chunk.asFloatBuffer().put(words, offset, count);
+                chunk.limit(count * 4);
+                writeFully(channel, chunk);
+                offset += count;
+            }
+        }
+    }
+
+    // Restores a new, independent system from a checkpoint file. Each call returns fresh
+    // instances, so one checkpoint can seed any number of experiments.
+    public static Checkpoint load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header);
+            header.flip();
+            if (header.getInt() != MAGIC) throw new IOException("Not a checkpoint: " + path);
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("Unsupported checkpoint version " + version + ": " + path);
+            ByteBuffer metadata = ByteBuffer.allocate(header.getInt());
+            readFully(channel, metadata);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(metadata.array()));
+
+            CPU cpu = readCPU(in);
+            Memory memory = new Memory(in.readInt());
+            OperatingSystem os = readOperatingSystem(in, cpu, memory);
+
+            long position = HEADER_SIZE + metadata.capacity();
+            float[] words = memory.registers;
+            if (channel.size() < position + (long)words.length * 4) throw new IOException("Truncated checkpoint: " + path);
+            for (int offset = 0; offset < words.length; ) {
+                int count = Math.min(MAP_CHUNK_FLOATS, words.length - offset);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, (long)count * 4);
+                mapped.order(MEMORY_BYTE_ORDER).asFloatBuffer().get(words, offset, count);
+                position += (long)count * 4;
+                offset += count;
+            }
+            return new Checkpoint(cpu, memory, os);
+        }
+    }
+
+    private static byte[] writeMetadata(OperatingSystem os) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        CPU cpu = os.cpu;
+        out.writeInt(cpu.programCounter);
+        out.writeLong(cpu.cycleCount);
+        out.writeInt(cpu.baseRegister);
+        out.writeInt(cpu.limitRegister);
+        out.writeBoolean(cpu.isIdle);
+        writeFloats(out, cpu.registers);
+        out.writeInt(os.memory.totalSize());
+
+        out.writeInt(os.quantum);
+        out.writeInt(os.allocator.arenaCount());
+        out.writeInt(os.nextAvailablePid.get());
+        out.writeInt(os.allocationFailures.get());
+        out.writeInt(os.allocationAlgorithm.ordinal());
+        out.writeBoolean(os.currentProcess != null);
+        if (os.currentProcess != null) writePCB(out, os.currentProcess);
+        for (FreeList arena : os.allocator.arenas) {
+            writeIntegerMap(out, arena.segments);
+            writeIntegerMap(out, arena.dirty);
+        }
+        writeIntegerMap(out, os.sharedSegments);
+        out.writeInt(os.forkCount);
+        out.writeInt(os.copyOnWriteCount);
+        writeQueue(out, os.readyQueue);
+        writeQueue(out, os.waitQueue);
+        writeQueue(out, os.admissionQueue);
+        out.writeInt(os.admissionPolicy.ordinal());
+        out.writeInt(os.delayedAdmissions);
+        out.writeLong(os.totalAdmissionWait);
+        out.writeInt(os.maxAdmissionQueueLength);
+        writeIntegerMap(out, os.sharedMemoryKeys);
+        writeIntegerMap(out, os.sharedMemorySizes);
+        out.writeInt(os.messageQueues.size());
+        for (MessageQueue queue : os.messageQueues.values()) writeMessageQueue(out, queue);
+        for (MemoryAllocationAlgorithm algorithm : MemoryAllocationAlgorithm.values()) {
+            out.writeInt(os.inPlaceGrowthCount(algorithm));
+            out.writeInt(os.movedGrowthCount(algorithm));
+        }
+        out.writeInt(os.deadlockPolicy.ordinal());
+        out.writeInt(os.deadlocksDetected);
+        out.writeInt(os.unsafeDelays);
+        out.writeInt(os.resources.size());
+        for (Resource resource : os.resources.values()) writeResource(out, resource);
+        out.writeInt(os.banker.claims.size());
+        for (Map.Entry<Integer, HashMap<Integer, Integer>> claims : os.banker.claims.entrySet()) {
+            out.writeInt(claims.getKey().intValue());
+            writeIntegerMap(out, claims.getValue());
+        }
+        out.writeBoolean(os.priorityScheduling);
+        out.writeBoolean(os.priorityInheritance);
+        out.writeInt(os.mutexes.size());
+        for (Mutex mutex : os.mutexes.values()) {
+            writeSemaphore(out, mutex);
+            out.writeInt(mutex.owner == null ? -1 : mutex.owner.pid);
+        }
+        out.writeInt(os.semaphores.size());
+        for (Semaphore semaphore : os.semaphores.values()) writeSemaphore(out, semaphore);
+        ByteArrayOutputStream randomBytes = new ByteArrayOutputStream();
+        ObjectOutputStream randomOut = new ObjectOutputStream(randomBytes);
+        randomOut.writeObject(os.rand);
+        randomOut.close();
+        out.writeInt(randomBytes.size());
+        randomBytes.writeTo(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static CPU readCPU(DataInputStream in) throws IOException {
+        CPU cpu = new CPU();
+        cpu.programCounter = in.readInt();
+        cpu.cycleCount = in.readLong();
+        cpu.baseRegister = in.readInt();
+        cpu.limitRegister = in.readInt();
+        cpu.isIdle = in.readBoolean();
+        cpu.registers = readFloats(in);
+        if (!cpu.isIdle) cpu.restoreProgram();
+        return cpu;
+    }
+
+    private static OperatingSystem readOperatingSystem(DataInputStream in, CPU cpu, Memory memory) throws IOException {
+        int quantum = in.readInt();
+        OperatingSystem os = new OperatingSystem(cpu, memory, quantum, in.readInt());
+        os.nextAvailablePid.set(in.readInt());
+        os.allocationFailures.set(in.readInt());
+        os.allocationAlgorithm = MemoryAllocationAlgorithm.values()[in.readInt()];
+        if (in.readBoolean()) os.currentProcess = readPCB(in);
+        for (int arena = 0; arena < os.allocator.arenaCount(); ++arena) {
+            FreeList free = new FreeList(memory);
+            for (int i = in.readInt(); i > 0; --i) {
+                int base = in.readInt();
+                free.addSegment(base, in.readInt());
+            }
+            for (int i = in.readInt(); i > 0; --i) {
+                int base = in.readInt();
+                free.markDirty(base, in.readInt());
+            }
+            os.allocator.arenas[arena] = free;
+        }
+        readIntegerMap(in, os.sharedSegments);
+        os.forkCount = in.readInt();
+        os.copyOnWriteCount = in.readInt();
+        readQueue(in, os.readyQueue);
+        readQueue(in, os.waitQueue);
+        readQueue(in, os.admissionQueue);
+        os.admissionBacklog = os.admissionQueue.queue.size();
+        os.admissionPolicy = AdmissionPolicy.values()[in.readInt()];
+        os.delayedAdmissions = in.readInt();
+        os.totalAdmissionWait = in.readLong();
+        os.maxAdmissionQueueLength = in.readInt();
+        readIntegerMap(in, os.sharedMemoryKeys);
+        readIntegerMap(in, os.sharedMemorySizes);
+        for (int i = in.readInt(); i > 0; --i) {
+            MessageQueue queue = readMessageQueue(in, os);
+            os.messageQueues.put(Integer.valueOf(queue.key), queue);
+        }
+        for (MemoryAllocationAlgorithm algorithm : MemoryAllocationAlgorithm.values()) {
+            os.inPlaceGrowths.put(algorithm, Integer.valueOf(in.readInt()));
+            os.movedGrowths.put(algorithm, Integer.valueOf(in.readInt()));
+        }
+        os.deadlockPolicy = DeadlockPolicy.values()[in.readInt()];
+        os.deadlocksDetected = in.readInt();
+        os.unsafeDelays = in.readInt();
+        for (int i = in.readInt(); i > 0; --i) readResource(in, os);
+        for (int i = in.readInt(); i > 0; --i) {
+            HashMap<Integer, Integer> claims = new HashMap<Integer, Integer>();
+            Integer pid = Integer.valueOf(in.readInt());
+            readIntegerMap(in, claims);
+            os.banker.claims.put(pid, claims);
+        }
+        os.priorityScheduling = in.readBoolean();
+        os.priorityInheritance = in.readBoolean();
+        for (int i = in.readInt(); i > 0; --i) {
+            Mutex mutex = os.createMutex(in.readInt());
+            readSemaphore(in, mutex, os);
+            mutex.owner = findPCB(os, in.readInt());
+        }
+        for (int i = in.readInt(); i > 0; --i) {
+            Semaphore semaphore = os.createSemaphore(in.readInt(), 0);
+            readSemaphore(in, semaphore, os);
+        }
+        byte[] randomBytes = new byte[in.readInt()];
+        in.readFully(randomBytes);
+        try {
+            os.rand = (Random)new ObjectInputStream(new ByteArrayInputStream(randomBytes)).readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Corrupt random number generator state", e);
+        }
+        return os;
+    }
+
+    private static void writeIntegerMap(DataOutputStream out, Map<Integer, Integer> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            out.writeInt(entry.getKey().intValue());
+            out.writeInt(entry.getValue().intValue());
+        }
+    }
+
+    private static void readIntegerMap(DataInputStream in, Map<Integer, Integer> map) throws IOException {
+        for (int i = in.readInt(); i > 0; --i) {
+            int key = in.readInt();
+            map.put(Integer.valueOf(key), Integer.valueOf(in.readInt()));
+        }
+    }
+
+    private static void writeMessageQueue(DataOutputStream out, MessageQueue queue) throws IOException {
+        out.writeInt(queue.key);
+        out.writeInt(queue.capacity());
+        out.writeInt(queue.waitingReceivers.size());
+        for (Map.Entry<ProcessControlBlock, Long> receiver : queue.waitingReceivers.entrySet()) {
+            out.writeInt(receiver.getKey().pid);
+            out.writeLong(receiver.getValue().longValue());
+        }
+        out.writeLong(queue.messagesSent);
+        out.writeLong(queue.messagesReceived);
+        out.writeLong(queue.sendsRejected);
+        out.writeLong(queue.blockedReceives);
+        out.writeLong(queue.wokenReceives);
+        out.writeLong(queue.totalBlockedCycles);
+        writeFloats(out, queue.toArray());
+    }
+
+    // Restores a message queue, and the receive waits of its blocked receivers, which are
+    // already in the wait queue.
+    private static MessageQueue readMessageQueue(DataInputStream in, OperatingSystem os) throws IOException {
+        MessageQueue queue = new MessageQueue(in.readInt(), in.readInt());
+        for (int i = in.readInt(); i > 0; --i) {
+            ProcessControlBlock receiver = findPCB(os, in.readInt());
+            queue.waitingReceivers.put(receiver, Long.valueOf(in.readLong()));
+            os.receiveWaits.put(Integer.valueOf(receiver.pid), queue);
+        }
+        queue.messagesSent = in.readLong();
+        queue.messagesReceived = in.readLong();
+        queue.sendsRejected = in.readLong();
+        queue.blockedReceives = in.readLong();
+        queue.wokenReceives = in.readLong();
+        queue.totalBlockedCycles = in.readLong();
+        for (float message : readFloats(in)) queue.offer(message);
+        return queue;
+    }
+
+    private static void writeResource(DataOutputStream out, Resource resource) throws IOException {
+        out.writeInt(resource.id);
+        out.writeInt(resource.units);
+        out.writeInt(resource.available);
+        writeIntegerMap(out, resource.holders);
+        out.writeInt(resource.waiters.size());
+        for (ProcessControlBlock waiter : resource.waiters) out.writeInt(waiter.pid);
+    }
+
+    // Restores a resource, and the wait-for graph edges of its waiters, which are already in
+    // the wait queue.
+    private static void readResource(DataInputStream in, OperatingSystem os) throws IOException {
+        Resource resource = os.createResource(in.readInt(), in.readInt());
+        resource.available = in.readInt();
+        readIntegerMap(in, resource.holders);
+        for (int i = in.readInt(); i > 0; --i) {
+            int waiterPid = in.readInt();
+            for (ProcessControlBlock pcb : os.waitQueue.queue) {
+                if (pcb.pid == waiterPid) {
+                    resource.waiters.add(pcb);
+                    os.waitForGraph.addWait(pcb.pid, resource);
+                }
+            }
+        }
+        if (!resource.waiters.isEmpty()) os.contendedResources.add(resource);
+    }
+
+    // The id is written first, and read by the caller to create the mutex or semaphore.
+    private static void writeSemaphore(DataOutputStream out, Semaphore semaphore) throws IOException {
+        out.writeInt(semaphore.id);
+        out.writeInt(semaphore.value.get());
+        out.writeLong(semaphore.fastAcquires);
+        out.writeLong(semaphore.slowAcquires);
+        out.writeLong(semaphore.fastReleases);
+        out.writeLong(semaphore.slowReleases);
+        out.writeInt(semaphore.waiters.size());
+        for (ProcessControlBlock waiter : semaphore.waiters) out.writeInt(waiter.pid);
+    }
+
+    // Restores a mutex or semaphore, and the lock waits of its waiters, which are already in
+    // the wait queue.
+    private static void readSemaphore(DataInputStream in, Semaphore semaphore, OperatingSystem os) throws IOException {
+        semaphore.value.set(in.readInt());
+        semaphore.fastAcquires = in.readLong();
+        semaphore.slowAcquires = in.readLong();
+        semaphore.fastReleases = in.readLong();
+        semaphore.slowReleases = in.readLong();
+        for (int i = in.readInt(); i > 0; --i) {
+            ProcessControlBlock waiter = findPCB(os, in.readInt());
+            semaphore.waiters.add(waiter);
+            os.lockWaits.put(Integer.valueOf(waiter.pid), semaphore);
+        }
+    }
+
+    // The restored PCB of a process that is running, ready or waiting, or null.
+    private static ProcessControlBlock findPCB(OperatingSystem os, int pid) {
+        if (os.currentProcess != null && os.currentProcess.pid == pid) return os.currentProcess;
+        for (ProcessControlBlock pcb : os.readyQueue.queue) {
+            if (pcb.pid == pid) return pcb;
+        }
+        for (ProcessControlBlock pcb : os.waitQueue.queue) {
+            if (pcb.pid == pid) return pcb;
+        }
+        return null;
+    }
+
+    private static void writeQueue(DataOutputStream out, ProcessQueue queue) throws IOException {
+        out.writeInt(queue.queue.size());
+        for (ProcessControlBlock pcb : queue.queue) writePCB(out, pcb);
+    }
+
+    private static void readQueue(DataInputStream in, ProcessQueue queue) throws IOException {
+        for (int i = in.readInt(); i > 0; --i) queue.queue.add(readPCB(in));
+    }
+
+    private static void writePCB(DataOutputStream out, ProcessControlBlock pcb) throws IOException {
+        out.writeInt(pcb.pid);
+        out.writeInt(pcb.parentPid);
+        out.writeInt(pcb.memoryBaseAddress);
+        out.writeInt(pcb.memoryLimitAddress);
+        out.writeInt(pcb.state.ordinal());
+        out.writeInt(pcb.programCounter);
+        out.writeLong(pcb.arrivalCycle);
+        out.writeBoolean(pcb.allocationFailed);
+        out.writeInt(pcb.waitEventId);
+        out.writeInt(pcb.priority);
+        out.writeInt(pcb.basePriority);
+        writeFloats(out, pcb.registers);
+        out.writeInt(pcb.attachedSegments.size());
+        for (Integer segment : pcb.attachedSegments) out.writeInt(segment.intValue());
+        out.writeInt(pcb.heldResources.size());
+        for (Integer resource : pcb.heldResources) out.writeInt(resource.intValue());
+    }
+
+    private static ProcessControlBlock readPCB(DataInputStream in) throws IOException {
+        int pid = in.readInt();
+        int parentPid = in.readInt();
+        int base = in.readInt();
+        int limit = in.readInt();
+        ProcessState state = ProcessState.values()[in.readInt()];
+        int programCounter = in.readInt();
+        long arrivalCycle = in.readLong();
+        boolean allocationFailed = in.readBoolean();
+        int waitEventId = in.readInt();
+        int priority = in.readInt();
+        int basePriority = in.readInt();
+        ProcessControlBlock pcb = new ProcessControlBlock(pid, base, limit, readFloats(in));
+        for (int i = in.readInt(); i > 0; --i) pcb.attachedSegments.add(Integer.valueOf(in.readInt()));
+        for (int i = in.readInt(); i > 0; --i) pcb.heldResources.add(Integer.valueOf(in.readInt()));
+        pcb.waitEventId = waitEventId;
+        pcb.priority = priority;
+        pcb.basePriority = basePriority;
+        pcb.parentPid = parentPid;
+        pcb.state = state;
+        pcb.programCounter = programCounter;
+        pcb.arrivalCycle = arrivalCycle;
+        pcb.allocationFailed = allocationFailed;
+        return pcb;
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        out.writeInt(values.length);
+        for (float value : values) out.writeFloat(value);
+    }
+
+    private static float[] readFloats(DataInputStream in) throws IOException {
+        float[] values = new float[in.readInt()];
+        for (int i = 0; i < values.length; ++i) values[i] = in.readFloat();
+        return values;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new EOFException("Truncated checkpoint");
+        }
+    }
+
+}
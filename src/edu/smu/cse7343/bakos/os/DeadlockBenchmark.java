@@ -0,0 +1,115 @@
+/*
+    DeadlockBenchmark.java
+    @author Yong Joseph Bakos
+
+    A command-line benchmark of deadlock handling over many processes and resources. Each
+    process is given a few single-unit resources it may use (and, for AVOIDANCE, claims
+    them). Every cycle the running process either releases a resource it holds or acquires
+    another of its own, and the round-robin scheduler switches processes every cycle, so
+    long chains of blocked processes build up.
+
+    It reports the mean cost of each acquire, how far the incremental cycle check searched
+    on average, and how long one search of the whole wait-for graph takes for comparison.
+
+    Example:
+        java -cp build/classes:lib/* edu.smu.cse7343.bakos.os.DeadlockBenchmark \
+            --processes 20000 --resources 20000 --cycles 200000 --policy DETECTION
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.*;
+
+public class DeadlockBenchmark {
+
+    private static final int PROGRAM_SIZE = 2;
+    private static final String USAGE =
+        "Usage: DeadlockBenchmark [--processes N] [--resources N] [--per-process N] [--cycles N]\n" +
+        "                         [--seed N] [--policy DETECTION|AVOIDANCE]";
+
+    public static void main(String[] args) {
+        int processes = 20000;
+        int resourceCount = 20000;
+        int resourcesPerProcess = 3;
+        int cycles = 200000;
+        long seed = 7343;
+        DeadlockPolicy policy = DeadlockPolicy.DETECTION;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+                if (args[i].equals("--processes")) processes = Integer.parseInt(args[i + 1]);
+                else if (args[i].equals("--resources")) resourceCount = Integer.parseInt(args[i + 1]);
+                else if (args[i].equals("--per-process")) resourcesPerProcess = Integer.parseInt(args[i + 1]);
+                else if (args[i].equals("--cycles")) cycles = Integer.parseInt(args[i + 1]);
+                else if (args[i].equals("--seed")) seed = Long.parseLong(args[i + 1]);
+                else if (args[i].equals("--policy")) policy = DeadlockPolicy.valueOf(args[i + 1]);
+                else throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            if (processes < 1 || resourceCount < 1 || resourcesPerProcess < 1) {
+                throw new IllegalArgumentException("--processes, --resources and --per-process must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        Random rand = new Random(seed);
+        CPU cpu = new CPU();
+        OperatingSystem os = new OperatingSystem(cpu, new Memory(processes * PROGRAM_SIZE), 1);
+        os.verbose = false;
+        os.deadlockPolicy = policy;
+        for (int id = 0; id < resourceCount; ++id) os.createResource(id, 1);
+        HashMap<Integer, int[]> usable = new HashMap<Integer, int[]>(); // pid -> resource ids
+        for (int i = 0; i < processes; ++i) {
+            os.exec(new Program(0, 0, 0, 0, 0, PROGRAM_SIZE, 0xDC969696));
+        }
+        for (ProcessControlBlock pcb : os.readyQueue.queue) {
+            int[] ids = new int[resourcesPerProcess];
+            for (int j = 0; j < ids.length; ++j) {
+                ids[j] = rand.nextInt(resourceCount);
+                os.banker().claim(pcb.pid, ids[j], 1);
+            }
+            usable.put(Integer.valueOf(pcb.pid), ids);
+        }
+
+        long acquires = 0;
+        long acquireNanos = 0;
+        int maxBlocked = 0;
+        for (int cycle = 0; cycle < cycles; ++cycle) {
+            cpu.tickTock();
+            os.manageProcesses();
+            ProcessControlBlock pcb = os.currentProcess();
+            if (pcb == null) continue;
+            int id = usable.get(Integer.valueOf(pcb.pid))[rand.nextInt(resourcesPerProcess)];
+            if (pcb.heldResources.contains(Integer.valueOf(id))) {
+                os.release(id);
+            } else {
+                long start = System.nanoTime();
+                os.acquire(id);
+                acquireNanos += System.nanoTime() - start;
+                ++acquires;
+            }
+            maxBlocked = Math.max(maxBlocked, os.waitForGraph().size());
+        }
+
+        WaitForGraph graph = os.waitForGraph();
+        long start = System.nanoTime();
+        int onCycle = graph.findCycle();
+        long scanNanos = System.nanoTime() - start;
+        System.out.println("Policy: " + policy + " processes=" + processes + " resources=" + resourceCount
+            + " per-process=" + resourcesPerProcess + " cycles=" + cycles + " seed=" + seed);
+        System.out.println(String.format("acquires %d, mean %.0f ns each", acquires, acquires == 0 ? 0.0 : (double)acquireNanos / acquires));
+        System.out.println(String.format("blocked now %d, at most %d", graph.size(), maxBlocked));
+        if (policy == DeadlockPolicy.DETECTION) {
+            System.out.println(String.format("deadlocks refused %d; incremental checks %d, mean %.2f processes visited",
+                os.deadlocksDetected(), graph.checks(), graph.meanProcessesVisited()));
+        } else {
+            System.out.println(String.format("unsafe requests delayed %d; safety checks %d, mean %.0f claims examined",
+                os.unsafeDelays(), os.banker().safetyChecks(), os.banker().meanClaimsExamined()));
+        }
+        System.out.println(String.format("full wait-for graph search: %.0f us, %s",
+            scanNanos / 1000.0, onCycle < 0 ? "no cycle" : "cycle through pid " + onCycle));
+    }
+
+}
@@ -0,0 +1,16 @@
+/*
+    DeadlockPolicy.java
+    @author Yong Joseph Bakos
+
+    An enumeration of the ways the kernel handles deadlock over simulated resources. With
+    DETECTION, a request that would close a cycle in the wait-for graph is refused rather than
+    left to deadlock. With AVOIDANCE, the Banker's algorithm only grants a request if the
+    system stays in a safe state, given each process's declared maximum claims.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+public enum DeadlockPolicy {
+    DETECTION,
+    AVOIDANCE;
+}
@@ -0,0 +1,86 @@
+/*
+    ExecBenchmark.java
+    @author Yong Joseph Bakos
+
+    A command-line benchmark of concurrent `exec` system calls. For each thread count, that
+    many client threads call OperatingSystem#submitExec as fast as they can, first against a
+    single arena (every allocation shares one lock) and then with one arena per thread. The
+    kernel thread readies the submitted processes afterwards, outside the timed region.
+
+    Example:
+        java -cp build/classes:lib/* edu.smu.cse7343.bakos.os.ExecBenchmark --threads 1,2,4,8 --execs 20000
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ExecBenchmark {
+
+    private static final int PROGRAM_SIZE = 32;
+    private static final String USAGE = "Usage: ExecBenchmark [--threads N,...] [--execs N]";
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) threadCounts.add(threads);
+        int execsPerThread = 20000;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+                if (args[i].equals("--threads")) {
+                    threadCounts.clear();
+                    for (String count : args[i + 1].split(",")) threadCounts.add(Integer.valueOf(count.trim()));
+                } else if (args[i].equals("--execs")) {
+                    execsPerThread = Integer.parseInt(args[i + 1]);
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        System.out.println(String.format("%8s %16s %16s", "threads", "1 arena exec/s", "N arenas exec/s"));
+        for (Integer threads : threadCounts) {
+            double shared = run(threads.intValue(), 1, execsPerThread);
+            double perThread = run(threads.intValue(), threads.intValue(), execsPerThread);
+            System.out.println(String.format("%8d %16.0f %16.0f", threads, shared, perThread));
+        }
+    }
+
+    // Returns the exec throughput, in calls per second, of `threads` concurrent callers.
+    private static double run(int threads, int arenas, final int execsPerThread) throws Exception {
+        CPU cpu = new CPU();
+        Memory memory = new Memory(threads * execsPerThread * PROGRAM_SIZE);
+        final OperatingSystem os = new OperatingSystem(cpu, memory, OperatingSystem.ROUND_ROBIN_CYCLE_LIMIT, arenas);
+        os.verbose = false;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; ++t) {
+            final int color = 0xDC969696 | t;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < execsPerThread; ++i) {
+                            os.submitExec(new Program(0, 0, 0, 0, 0, PROGRAM_SIZE, color));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - startTime;
+        os.manageProcesses();
+        return threads * (double)execsPerThread * 1e9 / elapsed;
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+    FreeList.java
+    @author Yong Joseph Bakos
+
+    This class represents the free list of a memory allocator: the free segments (holes) of
+    memory, keyed by base address, with adjacent holes always merged. It allocates with a
+    first-fit, best-fit, or worst-fit algorithm.
+
+    Holes are also indexed by size, which finds the best or worst fitting hole without
+    scanning the free list. Total free memory, the hole count, and a histogram of hole sizes
+    (by power of two) are updated in constant time on every change, so fragmentation can be
+    sampled as often as needed without walking the free list.
+
+    Freed memory is not zeroed on the spot. The freed range is only marked dirty, and is
+    zeroed later, a chunk at a time, by a background MemoryZeroer, or when it is allocated to
+    something that needs zeroed memory. Allocations that overwrite every word anyway (a
+    loaded program, a copied segment) never pay for zeroing. Allocations that need zeroed
+    memory prefer holes with no dirty words left, and zero whatever is still dirty in the
+    words they take.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.*;
+
+public class FreeList {
+
+    public static final int HISTOGRAM_BUCKETS = 32; // bucket i holds holes of size [2^i, 2^(i+1))
+
+    TreeMap<Integer, Integer> segments;                // base address -> size
+    private TreeMap<Integer, TreeSet<Integer>> bySize; // size -> base addresses
+    private int totalFree;
+    private int[] histogram;
+
+    private final Memory memory;
+    TreeMap<Integer, Integer> dirty; // base address -> size of free words not yet zeroed
+    private int dirtyWords;
+    long wordsZeroed;
+    long zeroingNanos;
+
+    public FreeList(Memory memory) {
+        this.memory = memory;
+        segments = new TreeMap<Integer, Integer>();
+        bySize = new TreeMap<Integer, TreeSet<Integer>>();
+        histogram = new int[HISTOGRAM_BUCKETS];
+        dirty = new TreeMap<Integer, Integer>();
+    }
+
+    // A free list with a single, zeroed hole.
+    public FreeList(Memory memory, int base, int size) {
+        this(memory);
+        addSegment(base, size);
+    }
+
+    // Takes `size` words from the start of a hole chosen by the algorithm, zeroing them if
+    // `zeroed`. Returns the base address of the allocation, or -1 if no hole is large enough.
+    public int alloc(int size, MemoryAllocationAlgorithm algorithm, boolean zeroed) {
+        int base = zeroed ? cleanHole(size, algorithm) : -1;
+        if (base == -1) base = hole(size, algorithm);
+        if (base == -1) return -1;
+        take(base, segments.get(Integer.valueOf(base)).intValue(), size);
+        clean(base, size, zeroed);
+        return base;
+    }
+
+    // The base address of the hole the algorithm chooses for `size` words, or -1.
+    private int hole(int size, MemoryAllocationAlgorithm algorithm) {
+        Map.Entry<Integer, TreeSet<Integer>> fit = null;
+        if (algorithm == MemoryAllocationAlgorithm.FIRST_FIT) {
+            for (Map.Entry<Integer, Integer> segment : segments.entrySet()) {
+                if (segment.getValue().intValue() >= size) return segment.getKey().intValue();
+            }
+        } else if (algorithm == MemoryAllocationAlgorithm.BEST_FIT) {
+            fit = bySize.ceilingEntry(Integer.valueOf(size));
+        } else if (algorithm == MemoryAllocationAlgorithm.WORST_FIT) {
+            fit = bySize.lastEntry();
+        }
+        if (fit == null || fit.getKey().intValue() < size) return -1;
+        return fit.getValue().last().intValue();
+    }
+
+    // Like `hole`, but only considers holes whose first `size` words are already zeroed. This
+    // may search many holes, but only allocations that need zeroed memory use it.
+    private int cleanHole(int size, MemoryAllocationAlgorithm algorithm) {
+        if (algorithm == MemoryAllocationAlgorithm.FIRST_FIT) {
+            for (Map.Entry<Integer, Integer> segment : segments.entrySet()) {
+                int base = segment.getKey().intValue();
+                if (segment.getValue().intValue() >= size && isClean(base, size)) return base;
+            }
+            return -1;
+        }
+        NavigableMap<Integer, TreeSet<Integer>> candidates = bySize.tailMap(Integer.valueOf(size), true);
+        if (algorithm == MemoryAllocationAlgorithm.WORST_FIT) candidates = candidates.descendingMap();
+        for (TreeSet<Integer> bases : candidates.values()) {
+            for (Integer base : bases.descendingSet()) {
+                if (isClean(base.intValue(), size)) return base.intValue();
+            }
+        }
+        return -1;
+    }
+
+    // Returns a segment to the free list, merging it with the holes on either side. Its
+    // words are only marked dirty, to be zeroed later. An empty segment is ignored.
+    public void free(int base, int size) {
+        if (size <= 0) return;
+        markDirty(base, size);
+        Map.Entry<Integer, Integer> previous = segments.lowerEntry(Integer.valueOf(base));
+        if (previous != null && previous.getKey().intValue() + previous.getValue().intValue() == base) {
+            removeSegment(previous.getKey().intValue(), previous.getValue().intValue());
+            base = previous.getKey().intValue();
+            size += previous.getValue().intValue();
+        }
+        Integer nextSize = segments.get(Integer.valueOf(base + size));
+        if (nextSize != null) {
+            removeSegment(base + size, nextSize.intValue());
+            size += nextSize.intValue();
+        }
+        addSegment(base, size);
+    }
+
+    // Takes `size` words from the start of the hole at `address`, if there is a hole there
+    // that is large enough. Used to grow an allocation into the hole that follows it.
+    public boolean extend(int address, int size, boolean zeroed) {
+        Integer holeSize = segments.get(Integer.valueOf(address));
+        if (holeSize == null || holeSize.intValue() < size) return false;
+        take(address, holeSize.intValue(), size);
+        clean(address, size, zeroed);
+        return true;
+    }
+
+    // Zeroes up to `maxWords` dirty free words, for a background zeroer. Returns the number
+    // of words zeroed, which is 0 once every hole is clean.
+    public int zeroDirty(int maxWords) {
+        Map.Entry<Integer, Integer> range = dirty.firstEntry();
+        if (range == null) return 0;
+        int base = range.getKey().intValue();
+        int size = Math.min(maxWords, range.getValue().intValue());
+        clean(base, size, true);
+        return size;
+    }
+
+    // Free words that are already zeroed.
+    public int preZeroed() {
+        return totalFree - dirtyWords;
+    }
+
+    public int dirtyWords() {
+        return dirtyWords;
+    }
+
+    public int totalFree() {
+        return totalFree;
+    }
+
+    public int largestSegment() {
+        return bySize.isEmpty() ? 0 : bySize.lastKey().intValue();
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    // The number of holes whose size falls in each power-of-two bucket.
+    public int[] histogram() {
+        return histogram.clone();
+    }
+
+    // 1 - (largest hole / free memory): 0 when all free memory is one hole, approaching 1 as
+    // free memory is scattered across many small holes.
+    public double externalFragmentation() {
+        return totalFree == 0 ? 0 : 1.0 - (double)largestSegment() / totalFree;
+    }
+
+    private void take(int base, int holeSize, int size) {
+        removeSegment(base, holeSize);
+        if (holeSize > size) addSegment(base + size, holeSize - size);
+    }
+
+    // Returns true if none of the words in the range are dirty.
+    private boolean isClean(int base, int size) {
+        Map.Entry<Integer, Integer> range = dirty.lowerEntry(Integer.valueOf(base + size));
+        return range == null || range.getKey().intValue() + range.getValue().intValue() <= base;
+    }
+
+    // Adds a range to the dirty ranges, merging it with the ranges on either side. An empty
+    // range is ignored, so every dirty range holds at least one word.
+    void markDirty(int base, int size) {
+        if (size <= 0) return;
+        dirtyWords += size;
+        Map.Entry<Integer, Integer> previous = dirty.lowerEntry(Integer.valueOf(base));
+        if (previous != null && previous.getKey().intValue() + previous.getValue().intValue() == base) {
+            dirty.remove(previous.getKey());
+            base = previous.getKey().intValue();
+            size += previous.getValue().intValue();
+        }
+        Integer nextSize = dirty.remove(Integer.valueOf(base + size));
+        if (nextSize != null) size += nextSize.intValue();
+        dirty.put(Integer.valueOf(base), Integer.valueOf(size));
+    }
+
+    // Removes a range from the dirty ranges, zeroing the words that were dirty if `zero`.
+    private void clean(int base, int size, boolean zero) {
+        int end = base + size;
+        Map.Entry<Integer, Integer> range = dirty.lowerEntry(Integer.valueOf(end));
+        while (range != null && range.getKey().intValue() + range.getValue().intValue() > base) {
+            int rangeStart = range.getKey().intValue();
+            int rangeEnd = rangeStart + range.getValue().intValue();
+            int from = Math.max(rangeStart, base);
+            int to = Math.min(rangeEnd, end);
+            dirty.remove(range.getKey());
+            if (rangeStart < from) dirty.put(range.getKey(), Integer.valueOf(from - rangeStart));
+            if (to < rangeEnd) dirty.put(Integer.valueOf(to), Integer.valueOf(rangeEnd - to));
+            dirtyWords -= to - from;
+            if (zero) {
+                long start = System.nanoTime();
+                Arrays.fill(memory.registers, from, to, 0);
+                zeroingNanos += System.nanoTime() - start;
+                wordsZeroed += to - from;
+            }
+            range = dirty.lowerEntry(Integer.valueOf(from));
+        }
+    }
+
+    void addSegment(int base, int size) {
+        if (size <= 0) return;
+        segments.put(Integer.valueOf(base), Integer.valueOf(size));
+        TreeSet<Integer> bases = bySize.get(Integer.valueOf(size));
+        if (bases == null) {
+            bases = new TreeSet<Integer>();
+            bySize.put(Integer.valueOf(size), bases);
+        }
+        bases.add(Integer.valueOf(base));
+        totalFree += size;
+        ++histogram[bucket(size)];
+    }
+
+    private void removeSegment(int base, int size) {
+        segments.remove(Integer.valueOf(base));
+        TreeSet<Integer> bases = bySize.get(Integer.valueOf(size));
+        bases.remove(Integer.valueOf(base));
+        if (bases.isEmpty()) bySize.remove(Integer.valueOf(size));
+        totalFree -= size;
+        --histogram[bucket(size)];
+    }
+
+    private static int bucket(int size) {
+        return 31 - Integer.numberOfLeadingZeros(size);
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+    HeadlessSimulation.java
+    @author Yong Joseph Bakos
+
+    This class runs one configuration of the simulated kernel without any graphics: a CPU,
+    memory and operating system are driven for a fixed number of cycles by a Workload, just
+    as Simulator#draw and the keyboard drive them in the visual simulation.
+
+    Each instance owns all of its state, including its random source, so many simulations
+    may run in parallel and each run is reproducible from its seed. A simulation may start
+    from a Checkpoint rather than an empty system, in which case it continues the random
+    source saved with the checkpoint, and only reports what happened during its own cycles.
+    It may save a checkpoint when it finishes, and may also record a time series of queue
+    lengths and free memory with a MetricsRecorder.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class HeadlessSimulation {
+
+    // Configuration
+    public final MemoryAllocationAlgorithm algorithm;
+    public int memorySize; // Taken from the checkpoint, when starting from one
+    public final int quantum;
+    public final Workload workload;
+    public final long cycles;
+    public final long seed;      // Unused when starting from a checkpoint
+    public Path startCheckpoint; // Optional
+    public Path saveCheckpoint;  // Optional
+    public Path metricsFile;     // Optional
+    public int metricsInterval = 1;
+    public AdmissionPolicy admissionPolicy = AdmissionPolicy.FIFO;
+    public boolean modelCache = false;
+    public boolean flushCacheOnContextSwitch = true;
+    public boolean backgroundZeroing = false; // Otherwise freed memory is only zeroed lazily
+    public int priorityLevels = 1; // With more, new processes get random priorities, scheduled
+                                   // with priority inheritance
+
+    // Results, available once `run` returns
+    public int processesCreated;
+    public int processesCompleted;
+    public int allocationFailures;
+    public int delayedAdmissions;        // Processes that waited in the admission queue
+    public double meanAdmissionWait;     // Mean cycles those processes waited
+    public int maxAdmissionQueueLength;
+    public int forks;
+    public int copiesOnWrite;
+    public long messagesReceived;
+    public double messageBlockingLatency; // Mean cycles a receiver waited on an empty queue
+    public int inPlaceGrowths;
+    public int movedGrowths;
+    public double fastLockRatio;         // Mutex and semaphore operations that took the fast path
+    public CacheHierarchy cache;         // Per process statistics, if modeled
+    public double l1HitRate;
+    public double l2HitRate;
+    public double meanQuantumL1HitRate;
+    public double throughput;            // Completed processes per 1000 cycles
+    public double meanFragmentation;     // Mean of 1 - (largest hole / free memory), per cycle
+    public double meanPreZeroed;         // Mean fraction of free memory already zeroed, per cycle
+    public double zeroingThroughput;     // Words zeroed per microsecond
+    public long[] latencyPercentiles;    // Turnaround in cycles at LATENCY_PERCENTILES
+    public long metricsBytes;            // Size of the metrics file, if recorded
+
+    public static final int[] LATENCY_PERCENTILES = { 50, 90, 99 };
+    private static final int PIPELINE_QUEUE_KEY = 1;
+    private static final int PIPELINE_QUEUE_CAPACITY = 16;
+    private static final int SHARED_MUTEX_ID = 1;
+    private static final int SHARED_SEMAPHORE_ID = 1;
+
+    public HeadlessSimulation(MemoryAllocationAlgorithm algorithm, int memorySize, int quantum,
+                              Workload workload, long cycles, long seed) {
+        this.algorithm = algorithm;
+        this.memorySize = memorySize;
+        this.quantum = quantum;
+        this.workload = workload;
+        this.cycles = cycles;
+        this.seed = seed;
+    }
+
+    public void run() {
+        CPU cpu;
+        OperatingSystem os;
+        if (startCheckpoint != null) {
+            Checkpoint checkpoint = loadCheckpoint();
+            cpu = checkpoint.cpu;
+            os = checkpoint.os;
+            os.quantum = quantum;
+            memorySize = checkpoint.memory.totalSize();
+        } else {
+            cpu = new CPU();
+            os = new OperatingSystem(cpu, new Memory(memorySize), quantum);
+            os.rand = new Random(seed);
+        }
+        Random rand = os.rand;
+        os.verbose = false;
+        if (modelCache) cpu.cache = cache = new CacheHierarchy(flushCacheOnContextSwitch);
+        os.allocationAlgorithm = algorithm;
+        os.admissionPolicy = admissionPolicy;
+        os.priorityScheduling = os.priorityInheritance = priorityLevels > 1;
+        MessageQueue pipeline = os.msgget(PIPELINE_QUEUE_KEY, PIPELINE_QUEUE_CAPACITY);
+        Mutex mutex = os.createMutex(SHARED_MUTEX_ID);
+        Semaphore semaphore = os.createSemaphore(SHARED_SEMAPHORE_ID, 0);
+        Counters start = new Counters(os, pipeline, algorithm);
+        os.resetMaxAdmissionQueueLength();
+        MetricsRecorder metrics = metricsFile == null ? null : openMetrics();
+        if (backgroundZeroing) os.startZeroer();
+        double preZeroed = 0;
+        long[] latencies = new long[64];
+        double fragmentation = 0;
+        int fragmentationSamples = 0;
+        for (long cycle = 0; cycle < cycles; ++cycle) {
+            cpu.tickTock();
+            os.manageProcesses();
+            if (metrics != null) metrics.record(cpu, os);
+            for (int i = workload.arrivals(rand); i > 0; --i) {
+                ProcessControlBlock pcb = os.exec(workload.nextProgram(rand));
+                if (pcb == null) continue;
+                if (priorityLevels > 1) pcb.setPriority(rand.nextInt(priorityLevels));
+                ++processesCreated;
+            }
+            if (!cpu.isIdle && rand.nextDouble() < workload.killRate) {
+                if (processesCompleted == latencies.length) latencies = Arrays.copyOf(latencies, latencies.length * 2);
+                latencies[processesCompleted++] = cpu.cycleCount - os.currentProcess().arrivalCycle;
+                os.killCurrentProcess();
+            } else if (!cpu.isIdle && rand.nextDouble() < workload.blockProbability) {
+                os.blockCurrentProcess();
+            }
+            if (!cpu.isIdle && rand.nextDouble() < workload.forkRate) {
+                if (os.fork() != 0) ++processesCreated;
+            }
+            if (!cpu.isIdle && rand.nextDouble() < workload.writeRate) {
+                os.storeWord(rand.nextInt(os.currentProcess().size() + 1), rand.nextFloat());
+            }
+            if (!cpu.isIdle && rand.nextDouble() < workload.messageRate) {
+                if (os.currentProcess().pid % 2 == 1) os.send(PIPELINE_QUEUE_KEY, cpu.cycleCount);
+                else os.receive(PIPELINE_QUEUE_KEY);
+            }
+            if (!cpu.isIdle && rand.nextDouble() < workload.growRate) {
+                os.grow(workload.growthSize);
+            }
+            if (!cpu.isIdle && rand.nextDouble() < workload.lockRate) {
+                if (mutex.owner() == os.currentProcess()) os.unlock(mutex);
+                else os.lock(mutex);
+            }
+            if (!cpu.isIdle && rand.nextDouble() < workload.lockRate) {
+                if (os.currentProcess().pid % 2 == 1) os.up(semaphore);
+                else os.down(semaphore);
+            }
+            if (!os.waitQueue.isEmpty() && rand.nextDouble() < workload.unblockProbability) {
+                os.interruptAndUnblock(os.waitQueue.peek());
+            }
+            if (os.totalFreeMemory() > 0) {
+                fragmentation += os.externalFragmentation();
+                preZeroed += (double)os.preZeroedMemory() / os.totalFreeMemory();
+                ++fragmentationSamples;
+            }
+        }
+        os.stopZeroer();
+        if (metrics != null) closeMetrics(metrics);
+        if (saveCheckpoint != null) saveCheckpoint(os);
+        Counters end = new Counters(os, pipeline, algorithm);
+        allocationFailures = end.allocationFailures - start.allocationFailures;
+        delayedAdmissions = end.delayedAdmissions - start.delayedAdmissions;
+        long admissionWait = end.totalAdmissionWait - start.totalAdmissionWait;
+        meanAdmissionWait = delayedAdmissions == 0 ? 0 : (double)admissionWait / delayedAdmissions;
+        maxAdmissionQueueLength = os.maxAdmissionQueueLength();
+        forks = end.forks - start.forks;
+        copiesOnWrite = end.copiesOnWrite - start.copiesOnWrite;
+        messagesReceived = end.messagesReceived - start.messagesReceived;
+        long wokenReceives = end.wokenReceives - start.wokenReceives;
+        long blockedCycles = end.blockedCycles - start.blockedCycles;
+        messageBlockingLatency = wokenReceives == 0 ? 0 : (double)blockedCycles / wokenReceives;
+        inPlaceGrowths = end.inPlaceGrowths - start.inPlaceGrowths;
+        movedGrowths = end.movedGrowths - start.movedGrowths;
+        long fastLocks = end.fastLocks - start.fastLocks;
+        long lockOperations = fastLocks + end.slowLocks - start.slowLocks;
+        fastLockRatio = lockOperations == 0 ? 0 : (double)fastLocks / lockOperations;
+        if (cache != null) {
+            l1HitRate = cache.l1.hitRate();
+            l2HitRate = cache.l2.hitRate();
+            meanQuantumL1HitRate = cache.meanQuantumL1HitRate();
+        }
+        throughput = cycles == 0 ? 0 : processesCompleted * 1000.0 / cycles;
+        meanFragmentation = fragmentationSamples == 0 ? 0 : fragmentation / fragmentationSamples;
+        meanPreZeroed = fragmentationSamples == 0 ? 0 : preZeroed / fragmentationSamples;
+        zeroingThroughput = os.zeroingThroughput();
+        Arrays.sort(latencies, 0, processesCompleted);
+        latencyPercentiles = new long[LATENCY_PERCENTILES.length];
+        for (int i = 0; i < LATENCY_PERCENTILES.length && processesCompleted > 0; ++i) {
+            int rank = (int)Math.ceil(LATENCY_PERCENTILES[i] / 100.0 * processesCompleted);
+            latencyPercentiles[i] = latencies[Math.max(rank, 1) - 1];
+        }
+    }
+
+    // The kernel's cumulative counters at one moment. A kernel restored from a checkpoint
+    // carries them over from its warm-up, so a run reports the difference from its start.
+    private static class Counters {
+        final int allocationFailures;
+        final int delayedAdmissions;
+        final long totalAdmissionWait;
+        final int forks;
+        final int copiesOnWrite;
+        final long messagesReceived;
+        final long wokenReceives;
+        final long blockedCycles;
+        final int inPlaceGrowths;
+        final int movedGrowths;
+        final long fastLocks;
+        final long slowLocks;
+
+        Counters(OperatingSystem os, MessageQueue pipeline, MemoryAllocationAlgorithm algorithm) {
+            allocationFailures = os.allocationFailures();
+            delayedAdmissions = os.delayedAdmissions();
+            totalAdmissionWait = os.totalAdmissionWait();
+            forks = os.forkCount();
+            copiesOnWrite = os.copyOnWriteCount();
+            messagesReceived = pipeline.messagesReceived();
+            wokenReceives = pipeline.wokenReceives();
+            blockedCycles = pipeline.totalBlockedCycles();
+            inPlaceGrowths = os.inPlaceGrowthCount(algorithm);
+            movedGrowths = os.movedGrowthCount(algorithm);
+            fastLocks = os.fastLockOperations();
+            slowLocks = os.slowLockOperations();
+        }
+    }
+
+    private Checkpoint loadCheckpoint() {
+        try {
+            return Checkpoint.load(startCheckpoint);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MetricsRecorder openMetrics() {
+        try {
+            return new MetricsRecorder(metricsFile, metricsInterval);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void closeMetrics(MetricsRecorder metrics) {
+        try {
+            metrics.close();
+            metricsBytes = metrics.bytesWritten();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void saveCheckpoint(OperatingSystem os) {
+        try {
+            Checkpoint.save(os, saveCheckpoint);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
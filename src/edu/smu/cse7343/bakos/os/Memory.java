@@ -28,4 +28,13 @@ public class Memory {
         }
     }
 
+    public float read(int address) {
+        return registers[address];
+    }
+
+    // Copies a range of words, as the kernel does when giving a process a private segment.
+    public void copy(int fromAddress, int toAddress, int length) {
+        System.arraycopy(registers, fromAddress, registers, toAddress, length);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+/*
+    MemoryZeroer.java
+    @author Yong Joseph Bakos
+
+    A background worker that zeroes freed memory, like the zero page thread of some kernels.
+    It zeroes dirty free words a chunk at a time, so that it only ever holds an arena's lock
+    briefly, and parks once every arena is clean until the kernel frees more memory.
+
+    Since it runs concurrently with the kernel, the pre-zeroed pool it leaves behind depends
+    on timing, and so do the holes chosen by allocations that prefer zeroed memory.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.concurrent.locks.*;
+
+public class MemoryZeroer implements Runnable {
+
+    public static final int CHUNK_WORDS = 4096;
+
+    private final ArenaAllocator allocator;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public MemoryZeroer(ArenaAllocator allocator) {
+        this.allocator = allocator;
+        thread = new Thread(this, "MemoryZeroer");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    // Stops the zeroer, and waits for it to finish its current chunk.
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Called when memory is freed, so that a parked zeroer starts again.
+    public void wake() {
+        LockSupport.unpark(thread);
+    }
+
+    public void run() {
+        while (running) {
+            if (allocator.zeroDirty(CHUNK_WORDS) > 0) continue;
+            // Nothing zeroed this pass, but arenas that were busy may still be dirty
+            if (allocator.dirtyWords() == 0) LockSupport.park(this);
+            else Thread.yield();
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+    MessageQueue.java
+    @author Yong Joseph Bakos
+
+    This class represents a bounded message queue between two simulated processes. It is a
+    single-producer/single-consumer ring buffer: the producer only ever advances the tail and
+    the consumer only ever advances the head, so neither side needs a lock.
+
+    Receivers that find the queue empty block, and the kernel keeps them in the order they
+    blocked. Each send hands its message to the first of them, if any, and wakes it.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+public class MessageQueue {
+
+    public final int key;
+    private final float[] buffer;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next message to receive
+    private final AtomicLong tail = new AtomicLong(); // next free slot to send into
+
+    // Receivers blocked on this queue while it was empty, in the order they blocked, with the
+    // CPU cycle at which each blocked
+    LinkedHashMap<ProcessControlBlock, Long> waitingReceivers;
+
+    // Statistics
+    long messagesSent;
+    long messagesReceived;
+    long sendsRejected;       // Sends to a full queue
+    long blockedReceives;
+    long wokenReceives;       // Blocked receives completed by a send
+    long totalBlockedCycles;  // Sum of the time woken receivers spent blocked
+
+    // The capacity is rounded up to a power of two.
+    public MessageQueue(int key, int capacity) {
+        this.key = key;
+        buffer = new float[capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1];
+        mask = buffer.length - 1;
+        waitingReceivers = new LinkedHashMap<ProcessControlBlock, Long>();
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public int size() {
+        return (int)(tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    // Producer side. Returns false if the queue is full.
+    public boolean offer(float message) {
+        long t = tail.get();
+        if (t - head.get() == buffer.length) return false;
+        buffer[(int)t & mask] = message;
+        tail.lazySet(t + 1); // publishes the message to the consumer
+        return true;
+    }
+
+    // Consumer side. The queue must not be empty.
+    public float take() {
+        long h = head.get();
+        float message = buffer[(int)h & mask];
+        head.lazySet(h + 1); // releases the slot to the producer
+        return message;
+    }
+
+    // Adds a receiver that blocked on the empty queue at a cycle.
+    void addReceiver(ProcessControlBlock pcb, long cycle) {
+        waitingReceivers.put(pcb, Long.valueOf(cycle));
+        ++blockedReceives;
+    }
+
+    // Removes the receiver that blocked first, counting its wait as over at a cycle. Returns
+    // null if no receiver is blocked.
+    ProcessControlBlock wakeReceiver(long cycle) {
+        Iterator<Map.Entry<ProcessControlBlock, Long>> receivers = waitingReceivers.entrySet().iterator();
+        if (!receivers.hasNext()) return null;
+        Map.Entry<ProcessControlBlock, Long> first = receivers.next();
+        receivers.remove();
+        ++wokenReceives;
+        totalBlockedCycles += cycle - first.getValue().longValue();
+        return first.getKey();
+    }
+
+    // Removes a receiver that stopped waiting without a message, as when it is interrupted.
+    boolean removeReceiver(ProcessControlBlock pcb) {
+        return waitingReceivers.remove(pcb) != null;
+    }
+
+    // The queued messages, from head to tail, without receiving them.
+    float[] toArray() {
+        long h = head.get();
+        float[] messages = new float[(int)(tail.get() - h)];
+        for (int i = 0; i < messages.length; ++i) messages[i] = buffer[(int)(h + i) & mask];
+        return messages;
+    }
+
+    public long messagesSent() {
+        return messagesSent;
+    }
+
+    public long messagesReceived() {
+        return messagesReceived;
+    }
+
+    public long sendsRejected() {
+        return sendsRejected;
+    }
+
+    public long blockedReceives() {
+        return blockedReceives;
+    }
+
+    public long wokenReceives() {
+        return wokenReceives;
+    }
+
+    public long totalBlockedCycles() {
+        return totalBlockedCycles;
+    }
+
+    // Mean number of cycles a receiver spent blocked on an empty queue, of the receivers that
+    // a send woke.
+    public double meanBlockingLatency() {
+        return wokenReceives == 0 ? 0 : (double)totalBlockedCycles / wokenReceives;
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+    MetricsReader.java
+    @author Yong Joseph Bakos
+
+    This class loads columns of a time series written by MetricsRecorder. Only the selected
+    columns are read and decoded; the others are skipped block by block. A series longer
+    than an array can hold is read in ranges of rows.
+
+    It may also be run from the command line to print selected columns as CSV, streamed a
+    block at a time:
+        java -cp build/classes:lib/* edu.smu.cse7343.bakos.os.MetricsReader FILE cycle,free,largest
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class MetricsReader {
+
+    // Returns the names of the columns recorded in the file.
+    public static List<String> columnNames(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(channel);
+        }
+    }
+
+    // The most rows `read` returns in one array. Longer series must be read in ranges.
+    public static final int MAX_ROWS = Integer.MAX_VALUE - 8;
+
+    // Receives the decoded rows of one block, column by column, in the order requested.
+    private interface BlockVisitor {
+        void visit(long[][] columns, int from, int count);
+    }
+
+    // Returns the number of rows in the file, reading only the block headers.
+    public static long rowCount(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int columnCount = readHeader(channel).size();
+            ByteBuffer blockHeader = ByteBuffer.allocate(4 + 4 * columnCount);
+            long rows = 0;
+            while (readFully(channel, blockHeader)) {
+                blockHeader.flip();
+                rows += blockHeader.getInt();
+                long length = 0;
+                for (int column = 0; column < columnCount; ++column) length += blockHeader.getInt();
+                channel.position(channel.position() + length);
+                blockHeader.clear();
+            }
+            return rows;
+        }
+    }
+
+    // Returns the selected columns, in the order requested, keyed by name. At least one
+    // column must be selected, and the file may hold at most MAX_ROWS rows.
+    public static Map<String, long[]> read(Path path, String... columns) throws IOException {
+        long rows = rowCount(path);
+        if (rows > MAX_ROWS) {
+            throw new IOException(path + " has " + rows + " rows, more than fit in an array;"
+                + " read it in ranges with read(path, firstRow, maxRows, columns)");
+        }
+        return read(path, 0, (int)rows, columns);
+    }
+
+    // Returns up to `maxRows` rows of the selected columns, starting at row `firstRow`, so a
+    // series of any length may be read a range at a time. Blocks before the range are skipped
+    // without being decoded.
+    public static Map<String, long[]> read(Path path, long firstRow, int maxRows, String... columns) throws IOException {
+        if (firstRow < 0 || maxRows < 0) throw new IllegalArgumentException("Negative row range");
+        final long[][] values = new long[columns.length][Math.min(maxRows, 1024)];
+        final int[] rows = new int[1];
+        scan(path, firstRow, maxRows, columns, new BlockVisitor() {
+            public void visit(long[][] block, int from, int count) {
+                if (rows[0] + count > values[0].length) {
+                    int capacity = (int)Math.min(MAX_ROWS, Math.max(values[0].length * 2L, rows[0] + count));
+                    for (int i = 0; i < values.length; ++i) values[i] = Arrays.copyOf(values[i], capacity);
+                }
+                for (int i = 0; i < values.length; ++i) System.arraycopy(block[i], from, values[i], rows[0], count);
+                rows[0] += count;
+            }
+        });
+        Map<String, long[]> result = new LinkedHashMap<String, long[]>();
+        for (int i = 0; i < columns.length; ++i) result.put(columns[i], Arrays.copyOf(values[i], rows[0]));
+        return result;
+    }
+
+    // Prints the selected columns as CSV, a block at a time, however many rows there are.
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: MetricsReader FILE [COLUMN,COLUMN,...]");
+            System.exit(1);
+        }
+        Path path = Paths.get(args[0]);
+        List<String> names = args.length > 1 ? Arrays.asList(args[1].split(",")) : columnNames(path);
+        final PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false);
+        final StringBuilder line = new StringBuilder();
+        for (String name : names) line.append(line.length() == 0 ? "" : ",").append(name);
+        out.println(line);
+        scan(path, 0, Long.MAX_VALUE, names.toArray(new String[names.size()]), new BlockVisitor() {
+            public void visit(long[][] columns, int from, int count) {
+                for (int row = from; row < from + count; ++row) {
+                    line.setLength(0);
+                    for (long[] column : columns) line.append(line.length() == 0 ? "" : ",").append(column[row]);
+                    out.println(line);
+                }
+            }
+        });
+        out.flush();
+    }
+
+    // Decodes the selected columns of the blocks holding rows `firstRow` up to `firstRow +
+    // maxRows`, and hands each block's part of the range to the visitor.
+    private static void scan(Path path, long firstRow, long maxRows, String[] columns, BlockVisitor visitor) throws IOException {
+        if (columns.length == 0) throw new IllegalArgumentException("No columns selected");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<String> names = readHeader(channel);
+            int[] selected = new int[names.size()]; // Index into `block`, or -1 to skip
+            Arrays.fill(selected, -1);
+            for (int i = 0; i < columns.length; ++i) {
+                int column = names.indexOf(columns[i]);
+                if (column < 0) throw new IllegalArgumentException("No such column: " + columns[i]);
+                if (selected[column] >= 0) throw new IllegalArgumentException("Column selected twice: " + columns[i]);
+                selected[column] = i;
+            }
+            long[][] block = new long[columns.length][0];
+            long blockStart = 0; // The row number of the block's first row
+            long remaining = maxRows;
+            ByteBuffer blockHeader = ByteBuffer.allocate(4 + 4 * names.size());
+            ByteBuffer encoded = ByteBuffer.allocate(0);
+            while (remaining > 0 && readFully(channel, blockHeader)) {
+                blockHeader.flip();
+                int blockRows = blockHeader.getInt();
+                long from = Math.max(0, firstRow - blockStart);
+                blockStart += blockRows;
+                for (int column = 0; column < names.size(); ++column) {
+                    int length = blockHeader.getInt();
+                    if (from >= blockRows || selected[column] < 0) {
+                        channel.position(channel.position() + length);
+                        continue;
+                    }
+                    if (encoded.capacity() < length) encoded = ByteBuffer.allocate(length);
+                    encoded.clear().limit(length);
+                    if (!readFully(channel, encoded)) throw new EOFException("Truncated metrics file: " + path);
+                    encoded.flip();
+                    if (block[selected[column]].length < blockRows) block[selected[column]] = new long[blockRows];
+                    decode(encoded, block[selected[column]], 0, blockRows);
+                }
+                blockHeader.clear();
+                if (from >= blockRows) continue;
+                int count = (int)Math.min(blockRows - from, remaining);
+                visitor.visit(block, (int)from, count);
+                remaining -= count;
+            }
+        }
+    }
+
+    private static List<String> readHeader(FileChannel channel) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 256));
+        if (in.readInt() != MetricsRecorder.MAGIC) throw new IOException("Not a metrics file");
+        int version = in.readInt();
+        if (version != MetricsRecorder.VERSION) throw new IOException("Unsupported metrics version " + version);
+        int count = in.readInt();
+        List<String> names = new ArrayList<String>();
+        int headerSize = 12;
+        for (int i = 0; i < count; ++i) {
+            String name = in.readUTF();
+            names.add(name);
+            headerSize += 2 + name.getBytes("UTF-8").length;
+        }
+        channel.position(headerSize); // The buffered stream may have read past the header
+        return names;
+    }
+
+    private static void decode(ByteBuffer encoded, long[] values, int offset, int count) {
+        long previous = 0;
+        for (int i = 0; i < count; ++i) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = encoded.get();
+                zigzag |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[offset + i] = previous;
+        }
+    }
+
+    // Fills the buffer, returning false at a clean end of file.
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == 0) return false;
+                throw new EOFException("Truncated metrics file");
+            }
+        }
+        return true;
+    }
+
+}
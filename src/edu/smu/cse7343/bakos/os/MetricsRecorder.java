@@ -0,0 +1,201 @@
+/*
+    MetricsRecorder.java
+    @author Yong Joseph Bakos
+
+    This class records a time series of kernel metrics from a headless simulation: the cycle
+    count, the lengths of the ready, wait and admission queues, the running pid (-1 when the
+    CPU is idle), free memory, the part of it already zeroed, and the largest hole. A row is
+    recorded every `sampleInterval` cycles.
+
+    Rows are collected into blocks of column arrays. The kernel loop only stores numbers into
+    the current block; full blocks are handed to a background writer thread, which encodes
+    each column as zigzag varints of the deltas between successive values and writes the
+    block through a file channel. Since most metrics change rarely from one sample to the
+    next, most values take a single byte. A small pool of blocks is recycled between the two
+    threads, so that recording allocates nothing, and the kernel only waits if the writer
+    falls a whole pool behind.
+
+    The file is a header (magic, version, column count and column names) followed by blocks.
+    Each block is its row count, the encoded length of each column, and then the encoded
+    columns, so a reader can skip the columns it does not need. See MetricsReader.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+public class MetricsRecorder implements Closeable {
+
+    static final int MAGIC = 0x4F534D54; // "OSMT"
+    static final int VERSION = 2; // Version 2 added the "prezeroed" column
+    public static final String[] COLUMNS = { "cycle", "ready", "waiting", "admission", "pid", "free", "prezeroed", "largest" };
+
+    private static final int ROWS_PER_BLOCK = 1 << 16;
+    private static final int POOL_SIZE = 4;
+    private static final int MAX_VARINT_BYTES = 10;
+
+    public final int sampleInterval;
+
+    private final FileChannel channel;
+    private final BlockingQueue<Block> emptyBlocks = new ArrayBlockingQueue<Block>(POOL_SIZE);
+    private final BlockingQueue<Block> fullBlocks = new ArrayBlockingQueue<Block>(POOL_SIZE + 1);
+    private final Thread writer;
+    private volatile IOException writeError;
+    private Block block;
+    private long rowsRecorded;
+    private long bytesWritten;
+
+    private static final Block END_OF_SERIES = new Block(0);
+
+    // A block of rows, stored column by column
+    private static class Block {
+        final long[][] columns;
+        int rows;
+
+        Block(int capacity) {
+            columns = new long[COLUMNS.length][capacity];
+        }
+    }
+
+    public MetricsRecorder(Path path, int sampleInterval) throws IOException {
+        if (sampleInterval < 1) throw new IllegalArgumentException("Sample interval must be positive: " + sampleInterval);
+        this.sampleInterval = sampleInterval;
+        for (int i = 0; i < POOL_SIZE; ++i) emptyBlocks.add(new Block(ROWS_PER_BLOCK));
+        block = emptyBlocks.remove();
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        writeFully(ByteBuffer.wrap(header()));
+        writer = new Thread(new Runnable() {
+            public void run() {
+                writeBlocks();
+            }
+        }, "MetricsRecorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Records one row, if this cycle is a sampled one. Called from the kernel thread.
+    public void record(CPU cpu, OperatingSystem os) {
+        if (cpu.cycleCount % sampleInterval != 0) return;
+        long[][] columns = block.columns;
+        int row = block.rows;
+        columns[0][row] = cpu.cycleCount;
+        columns[1][row] = os.readyQueue.queue.size();
+        columns[2][row] = os.waitQueue.queue.size();
+        columns[3][row] = os.admissionQueueLength();
+        columns[4][row] = cpu.isIdle ? -1 : os.currentProcess().pid;
+        columns[5][row] = os.totalFreeMemory();
+        columns[6][row] = os.preZeroedMemory();
+        columns[7][row] = os.largestFreeSegment();
+        ++rowsRecorded;
+        if (++block.rows == ROWS_PER_BLOCK) handOff();
+    }
+
+    public long rowsRecorded() {
+        return rowsRecorded;
+    }
+
+    // The number of bytes in the file, once the recorder is closed.
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    // Writes any partial block, waits for the writer to finish, and closes the file.
+    public void close() throws IOException {
+        if (block == null) return;
+        try {
+            if (block.rows > 0) handOff();
+            fullBlocks.put(END_OF_SERIES);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing " + this);
+        } finally {
+            block = null;
+            bytesWritten = channel.size();
+            channel.close();
+        }
+        if (writeError != null) throw writeError;
+    }
+
+    private void handOff() {
+        try {
+            fullBlocks.put(block);
+            block = emptyBlocks.take();
+            block.rows = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while recording metrics", e);
+        }
+    }
+
+    // The writer thread's loop: encode and write each full block, then return it to the pool.
+    private void writeBlocks() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4 + 4 * COLUMNS.length
+            + COLUMNS.length * ROWS_PER_BLOCK * MAX_VARINT_BYTES);
+        try {
+            while (true) {
+                Block full = fullBlocks.take();
+                if (full == END_OF_SERIES) return;
+                if (writeError == null) {
+                    try {
+                        encode(full, buffer);
+                        writeFully(buffer);
+                    } catch (IOException e) {
+                        writeError = e;
+                    }
+                }
+                emptyBlocks.put(full);
+            }
+        } catch (InterruptedException e) {
+            writeError = new InterruptedIOException("Metrics writer interrupted");
+        }
+    }
+
+    private static void encode(Block block, ByteBuffer buffer) {
+        long[][] columns = block.columns;
+        buffer.clear();
+        buffer.putInt(block.rows);
+        int lengths = buffer.position();
+        buffer.position(lengths + 4 * columns.length);
+        for (int c = 0; c < columns.length; ++c) {
+            int start = buffer.position();
+            long previous = 0;
+            for (int row = 0; row < block.rows; ++row) {
+                long delta = columns[c][row] - previous;
+                previous = columns[c][row];
+                putVarint(buffer, (delta << 1) ^ (delta >> 63));
+            }
+            buffer.putInt(lengths + 4 * c, buffer.position() - start);
+        }
+        buffer.flip();
+    }
+
+    private static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    private byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(COLUMNS.length);
+        for (String column : COLUMNS) out.writeUTF(column);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+}
@@ -0,0 +1,25 @@
+/*
+    Mutex.java
+    @author Yong Joseph Bakos
+
+    This class represents a mutual exclusion lock for simulated processes: a Semaphore with
+    one unit, and an owner. Only the owner may unlock it. Knowing the owner also lets the
+    kernel lend it the priority of a higher-priority process that blocks on the lock
+    (priority inheritance).
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+public class Mutex extends Semaphore {
+
+    ProcessControlBlock owner; // null while unlocked
+
+    public Mutex(int id) {
+        super(id, 1);
+    }
+
+    public ProcessControlBlock owner() {
+        return owner;
+    }
+
+}
@@ -5,13 +5,19 @@
     This class represents a simple, simulated operating system that provides "system calls"
     for executing new processes, blocking, unblocking, interrupting, and allocating memory.
 
-    It leverages a brute-force first-fit, best-fit, and worst-fit allocation algorithm for
-    memory. Two queues, ready and wait, are maintained for managing PCBs.
+    It leverages a first-fit, best-fit, and worst-fit allocation algorithm for memory, over
+    one or more arenas of free lists. Three queues, ready, wait and admission, are maintained
+    for managing PCBs.
+
+    The kernel runs on the thread that calls `manageProcesses`; only the `submit` system
+    calls may be made from other threads.
 */
 
 package edu.smu.cse7343.bakos.os;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 public class OperatingSystem {
 
@@ -19,170 +25,832 @@ public class OperatingSystem {
     private static final int FAUX_INITIAL_USERSPACE_PID = 10;
     private static final int DEFAULT_HEAP_SIZE = 10;
     private static final int DEFAULT_STACK_SIZE = 10;
+    private static final int ALLOCATION_FAILED = -1;
 
-    private CPU cpu;
-    private Memory memory;
-    private int currentPid;
-    private int nextAvailablePid;
+    // Package-private state is also read and restored by Checkpoint.
+    CPU cpu;
+    Memory memory;
+    ProcessControlBlock currentProcess; // null when the kernel idle process is running
+    AtomicInteger nextAvailablePid;
+    int quantum;
+    AtomicInteger allocationFailures;
     public ProcessQueue readyQueue;
     public ProcessQueue waitQueue;
+    public ProcessQueue admissionQueue;
+    public volatile AdmissionPolicy admissionPolicy;
+    volatile int admissionBacklog; // admissionQueue's length, readable by any thread
+    int delayedAdmissions;      // Processes that had to wait in the admission queue
+    long totalAdmissionWait;    // Cycles spent in the admission queue by delayed processes
+    int maxAdmissionQueueLength;
 
-    private TreeMap<Integer, Integer> freeMap;
-    public MemoryAllocationAlgorithm allocationAlgorithm;
+    ArenaAllocator allocator;
+    HashMap<Integer, Integer> sharedSegments; // base address -> reference count, only while shared
+    int forkCount;
+    int copyOnWriteCount;
+    HashMap<Integer, Integer> sharedMemoryKeys;  // key -> base address of a shared memory segment
+    HashMap<Integer, Integer> sharedMemorySizes; // base address -> size of a shared memory segment
+    HashMap<Integer, MessageQueue> messageQueues; // key -> message queue
+    HashMap<Integer, MessageQueue> receiveWaits;  // pid -> message queue it is blocked receiving on
+    EnumMap<MemoryAllocationAlgorithm, Integer> inPlaceGrowths;
+    EnumMap<MemoryAllocationAlgorithm, Integer> movedGrowths;
+    public volatile MemoryAllocationAlgorithm allocationAlgorithm;
+    HashMap<Integer, Resource> resources;       // id -> resource
+    LinkedHashSet<Resource> contendedResources; // Resources with blocked waiters
+    WaitForGraph waitForGraph;
+    Banker banker;
+    public DeadlockPolicy deadlockPolicy;
+    int deadlocksDetected;   // Requests refused because they would have deadlocked
+    int unsafeDelays;        // Requests delayed because they would have been unsafe
+    HashMap<Integer, Mutex> mutexes;           // id -> mutex
+    HashMap<Integer, Semaphore> semaphores;    // id -> semaphore
+    HashMap<Integer, Semaphore> lockWaits;     // pid -> mutex or semaphore it is parked on
+    public boolean priorityScheduling; // Otherwise the ready queue is strictly first come, first served
+    public boolean priorityInheritance;
+    private ConcurrentLinkedQueue<ProcessControlBlock> arrivals; // loaded by `submitExec`
+    private ConcurrentLinkedQueue<Runnable> systemCalls;        // other `submit` calls
+    private MemoryZeroer zeroer; // null unless zeroing in the background
 
-    private Random rand;
+    Random rand; // Drives the workload of a headless run, and is checkpointed so a restored run continues it
+    public boolean verbose = true; // trace allocations to stdout, for demo purposes
 
     public OperatingSystem(CPU cpu, Memory memory) {
+        this(cpu, memory, ROUND_ROBIN_CYCLE_LIMIT);
+    }
+
+    // A kernel with a configurable round-robin quantum, so headless runs can be tuned.
+    public OperatingSystem(CPU cpu, Memory memory, int quantum) {
+        this(cpu, memory, quantum, 1);
+    }
+
+    // A kernel whose memory is split into arenas, for concurrent `submitExec` callers.
+    public OperatingSystem(CPU cpu, Memory memory, int quantum, int arenas) {
         this.cpu = cpu;
         this.memory = memory;
-        currentPid = 0; // idle
-        nextAvailablePid = FAUX_INITIAL_USERSPACE_PID;
+        this.quantum = quantum;
+        currentProcess = null; // idle
+        nextAvailablePid = new AtomicInteger(FAUX_INITIAL_USERSPACE_PID);
+        allocationFailures = new AtomicInteger();
         readyQueue = new ProcessQueue(ProcessState.READY);
         waitQueue = new ProcessQueue(ProcessState.WAITING);
-        freeMap = new TreeMap<Integer, Integer>();
-        freeMap.put(new Integer(0), new Integer(memory.totalSize()));
+        admissionQueue = new ProcessQueue(ProcessState.NEW);
+        admissionPolicy = AdmissionPolicy.FIFO;
+        allocator = new ArenaAllocator(memory, arenas);
+        arrivals = new ConcurrentLinkedQueue<ProcessControlBlock>();
+        systemCalls = new ConcurrentLinkedQueue<Runnable>();
+        sharedSegments = new HashMap<Integer, Integer>();
+        sharedMemoryKeys = new HashMap<Integer, Integer>();
+        sharedMemorySizes = new HashMap<Integer, Integer>();
+        messageQueues = new HashMap<Integer, MessageQueue>();
+        receiveWaits = new HashMap<Integer, MessageQueue>();
+        inPlaceGrowths = new EnumMap<MemoryAllocationAlgorithm, Integer>(MemoryAllocationAlgorithm.class);
+        movedGrowths = new EnumMap<MemoryAllocationAlgorithm, Integer>(MemoryAllocationAlgorithm.class);
+        for (MemoryAllocationAlgorithm algorithm : MemoryAllocationAlgorithm.values()) {
+            inPlaceGrowths.put(algorithm, Integer.valueOf(0));
+            movedGrowths.put(algorithm, Integer.valueOf(0));
+        }
         allocationAlgorithm = MemoryAllocationAlgorithm.FIRST_FIT;
+        resources = new HashMap<Integer, Resource>();
+        contendedResources = new LinkedHashSet<Resource>();
+        waitForGraph = new WaitForGraph();
+        banker = new Banker();
+        deadlockPolicy = DeadlockPolicy.DETECTION;
+        mutexes = new HashMap<Integer, Mutex>();
+        semaphores = new HashMap<Integer, Semaphore>();
+        lockWaits = new HashMap<Integer, Semaphore>();
         rand = new Random();
     }
 
     // Simulates the cycles of a scheduler thread. Switches context when the round-robin cycle
     // period ends and there are other PCBs in the ready queue.
     public void manageProcesses() {
+        serviceSubmittedCalls();
         if (!readyQueue.isEmpty() && (cpu.isIdle || roundRobinCycleLimitReached())) {
             switchContext();
         } // else idle
     }
 
     // Execute a new process, by adding a PCB for the new process to the tail
-    // of the ready queue.
+    // of the ready queue once the long-term scheduler admits it.
     public void exec() {
-        Program program = new Program(); // load program from disk
-        // allocate memory
-        int memoryNeeded = (int)program.size;
-        int base = alloc(memoryNeeded);
-        // store in memory
-        storeInMemory(base, memoryNeeded, program);
-        ProcessControlBlock pcb = new ProcessControlBlock(nextAvailablePid++, base, base + memoryNeeded - 1, program);
-        readyQueue.add(pcb);
-    }
-
-    // Simulates the loading of a program into allocated memory.
-    private void storeInMemory(int baseAddress, int memoryNeeded, Program p) {
-        for (int i = baseAddress; i < baseAddress + memoryNeeded; ++i) {
-            memory.write(i, Float.intBitsToFloat(p.color));
+        exec(new Program()); // load program from disk
+    }
+
+    // Execute an already loaded program. Headless runs supply their own programs, since
+    // loading one from "disk" requires a Processing context. Returns the new process's PCB,
+    // or null if the program could never fit in memory.
+    public ProcessControlBlock exec(Program program) {
+        if (isUnloadable(program)) return null;
+        ProcessControlBlock pcb = new ProcessControlBlock(nextAvailablePid.getAndIncrement(), 0, -1, program); // not yet in memory
+        pcb.arrivalCycle = cpu.cycleCount;
+        queueForAdmission(pcb);
+        return pcb;
+    }
+
+    // Traps a program that could never be loaded: one without a single word, or one larger
+    // than an arena. A segment never spans two arenas, so the limit is the size of an arena,
+    // which is all of memory when there is only one.
+    private boolean isUnloadable(Program program) {
+        if ((int)program.size < 1) {
+            log("TRAP: Program has no size.");
+            return true;
         }
+        if ((int)program.size <= allocator.maximumSegment()) return false;
+        log("TRAP: Program larger than an arena of memory (" + allocator.maximumSegment() + " words).");
+        return true;
     }
 
-    // A simulated `malloc` system call. Uses either a FIRST_FIT, BEST_FIT, or WORST_FIT
-    // algorithm.
-    // TODO: Replace with Strategy pattern.
-    private int alloc(int memoryNeeded) {
-        // first fit
-        System.out.println("ALLOC " + memoryNeeded);
-        if (allocationAlgorithm == MemoryAllocationAlgorithm.FIRST_FIT) {
-            for (Integer key : freeMap.keySet()) {
-                int baseAddress = key.intValue();
-                int size = freeMap.get(key).intValue();
-                System.out.println("Checking: " + baseAddress + "->" + size);
-                if (size > memoryNeeded) {
-                    freeMap.remove(key);
-                    int newFreeBaseAddress = baseAddress + memoryNeeded;
-                    int newFreeSize = baseAddress + size - newFreeBaseAddress;
-                    System.out.println("Found space at: " + baseAddress);
-                    System.out.println("Remaining: " + newFreeBaseAddress + "->" + newFreeSize);
-                    freeMap.put(new Integer(newFreeBaseAddress), new Integer(newFreeSize));
-                    return baseAddress;
-                }
+    // Admits the new process if it fits, or else leaves it waiting for admission.
+    private void queueForAdmission(ProcessControlBlock pcb) {
+        admissionQueue.add(pcb);
+        admitWaitingProcesses();
+        if (!admissionQueue.isEmpty()) {
+            log("ADMISSION QUEUE: " + admissionQueue.queue.size() + " waiting for memory");
+            maxAdmissionQueueLength = Math.max(maxAdmissionQueueLength, admissionQueue.queue.size());
+        }
+        admissionBacklog = admissionQueue.queue.size();
+    }
+
+    // A thread-safe `exec`. Allocates memory from the calling thread's arena and loads the
+    // program on the calling thread, so concurrent callers only contend on the same arena.
+    // The kernel readies the process on its next cycle, or queues it for admission if it did
+    // not fit (or if others are already waiting, to keep admission fair).
+    public void submitExec(Program program) {
+        if (isUnloadable(program)) return;
+        final ProcessControlBlock pcb = new ProcessControlBlock(nextAvailablePid.getAndIncrement(), 0, -1, program);
+        pcb.arrivalCycle = cpu.cycleCount;
+        int memoryNeeded = memoryNeeded(pcb);
+        boolean tried = admissionBacklog == 0;
+        int base = tried ? tryAlloc(memoryNeeded, false) : ALLOCATION_FAILED;
+        if (base == ALLOCATION_FAILED) {
+            if (tried) countAdmissionFailure(pcb);
+            submit(new Runnable() {
+                public void run() { queueForAdmission(pcb); }
+            });
+            return;
+        }
+        storeInMemory(base, memoryNeeded, pcb.registers[0]);
+        pcb.memoryBaseAddress = base;
+        pcb.memoryLimitAddress = base + memoryNeeded - 1;
+        arrivals.add(pcb);
+    }
+
+    // A thread-safe `killCurrentProcess`, carried out on the kernel's next cycle.
+    public void submitKill() {
+        submit(new Runnable() {
+            public void run() { killCurrentProcess(); }
+        });
+    }
+
+    // A thread-safe `blockCurrentProcess`, carried out on the kernel's next cycle.
+    public void submitBlock() {
+        submit(new Runnable() {
+            public void run() { blockCurrentProcess(); }
+        });
+    }
+
+    // A thread-safe `interruptAndUnblock`, carried out on the kernel's next cycle.
+    public void submitUnblock(final ProcessControlBlock pcb) {
+        submit(new Runnable() {
+            public void run() { interruptAndUnblock(pcb); }
+        });
+    }
+
+    // Queues any other system call to be made on the kernel's next cycle.
+    public void submit(Runnable systemCall) {
+        systemCalls.add(systemCall);
+    }
+
+    // Readies processes loaded by other threads, then carries out their other system calls.
+    private void serviceSubmittedCalls() {
+        ProcessControlBlock pcb;
+        while ((pcb = arrivals.poll()) != null) readyQueue.add(pcb);
+        Runnable systemCall;
+        while ((systemCall = systemCalls.poll()) != null) systemCall.run();
+    }
+
+    // Simulates a long-term scheduler. Allocates memory for, loads, and readies waiting new
+    // processes, in the order of the admission policy, for as long as they fit.
+    private void admitWaitingProcesses() {
+        while (!admissionQueue.isEmpty()) {
+            ProcessControlBlock pcb = nextAdmission();
+            int memoryNeeded = memoryNeeded(pcb);
+            // allocate memory, counting a failure only the first time this process is tried
+            int base = tryAlloc(memoryNeeded, false);
+            if (base == ALLOCATION_FAILED) {
+                countAdmissionFailure(pcb);
+                return; // nothing else fits either
             }
-        } else if (allocationAlgorithm == MemoryAllocationAlgorithm.BEST_FIT) {
-            System.out.println("BEST FIT");
-            System.out.println("Segment size - >Address");
-            TreeMap<Integer, Integer> segmentSizes = new TreeMap<Integer, Integer>(); // size -> address
-            for (Integer key : freeMap.keySet()) {
-                segmentSizes.put(freeMap.get(key), key);
-                System.out.println(freeMap.get(key) + " -> " + key);
+            admissionQueue.remove(pcb);
+            // store in memory
+            storeInMemory(base, memoryNeeded, pcb.registers[0]);
+            pcb.memoryBaseAddress = base;
+            pcb.memoryLimitAddress = base + memoryNeeded - 1;
+            if (pcb.arrivalCycle != cpu.cycleCount) {
+                ++delayedAdmissions;
+                totalAdmissionWait += cpu.cycleCount - pcb.arrivalCycle;
             }
-            Integer bestFittingSegmentSize = segmentSizes.ceilingKey(new Integer(memoryNeeded));
-            if (bestFittingSegmentSize != null) {
-                int baseAddress = segmentSizes.get(bestFittingSegmentSize).intValue();
-                int newFreeBaseAddress = baseAddress + memoryNeeded;
-                int newFreeSize = baseAddress + bestFittingSegmentSize.intValue() - newFreeBaseAddress;
-                System.out.println("Found space at: " + baseAddress);
-                System.out.println("Remaining: " + newFreeBaseAddress + "->" + newFreeSize);
-                freeMap.remove(new Integer(baseAddress));
-                freeMap.put(new Integer(newFreeBaseAddress), new Integer(newFreeSize));
-                return baseAddress;
+            readyQueue.add(pcb);
+        }
+        admissionBacklog = admissionQueue.queue.size();
+    }
+
+    // Counts a failed allocation for a process awaiting admission, only the first time, so a
+    // process counts once however often it is retried. Processes queued behind it were never
+    // tried, and are not counted.
+    private void countAdmissionFailure(ProcessControlBlock pcb) {
+        if (pcb.allocationFailed) return;
+        pcb.allocationFailed = true;
+        allocationFailures.incrementAndGet();
+    }
+
+    // The PCB in the admission queue to admit next. With FIFO, a large program at the head of
+    // the queue holds back smaller ones behind it.
+    private ProcessControlBlock nextAdmission() {
+        ProcessControlBlock next = admissionQueue.peek();
+        if (admissionPolicy == AdmissionPolicy.SMALLEST_FIRST) {
+            for (ProcessControlBlock pcb : admissionQueue.queue) {
+                if (memoryNeeded(pcb) < memoryNeeded(next)) next = pcb;
             }
-        } else if (allocationAlgorithm == MemoryAllocationAlgorithm.WORST_FIT) {
-            System.out.println("WORST FIT");
-            System.out.println("Segment size - >Address");
-            TreeMap<Integer, Integer> segmentSizes = new TreeMap<Integer, Integer>(); // size -> address
-            for (Integer key : freeMap.keySet()) {
-                segmentSizes.put(freeMap.get(key), key);
-                System.out.println(freeMap.get(key) + " -> " + key);
+        }
+        return next;
+    }
+
+    // The memory a program needs, as recorded in its size register.
+    private int memoryNeeded(ProcessControlBlock pcb) {
+        return (int)pcb.registers[1];
+    }
+
+    // A simulated `fork` system call. Creates a child of the executing process, with a copy of
+    // its registers, that shares the parent's memory segment until either process writes to
+    // it. Returns the child's pid to the parent, or 0 if no userspace process is executing.
+    public int fork() {
+        if (!cpuIsExecutingAUserspaceProcess()) return 0;
+        ProcessControlBlock parent = currentProcess;
+        parent.saveContext(cpu);
+        ProcessControlBlock child = new ProcessControlBlock(nextAvailablePid.getAndIncrement(), parent.memoryBaseAddress,
+            parent.memoryLimitAddress, parent.registers.clone());
+        child.programCounter = parent.programCounter;
+        child.parentPid = parent.pid;
+        child.arrivalCycle = cpu.cycleCount;
+        child.setPriority(parent.basePriority);
+        addReference(parent.memoryBaseAddress);
+        for (Integer segment : parent.attachedSegments) {
+            child.attachedSegments.add(segment);
+            addReference(segment.intValue());
+        }
+        ++forkCount;
+        readyQueue.add(child);
+        return child.pid;
+    }
+
+    // Simulates the executing process storing a word at an offset within its own segment.
+    // If the segment is shared with a forked process, the writer first gets a private copy.
+    public void storeWord(int offset, float value) {
+        if (!cpuIsExecutingAUserspaceProcess()) return;
+        ProcessControlBlock pcb = currentProcess;
+        if (offset < 0 || offset > pcb.size()) {
+            log("TRAP: Segmentation fault in process " + pcb.pid);
+            return;
+        }
+        if (sharedSegments.containsKey(Integer.valueOf(pcb.memoryBaseAddress)) && !copyOnWrite(pcb)) {
+            log("TRAP: Out of memory for a private copy in process " + pcb.pid);
+            return;
+        }
+        memory.write(pcb.memoryBaseAddress + offset, value);
+    }
+
+    // Gives the executing process a private copy of its shared segment. Returns false if there
+    // is no free segment large enough for the copy.
+    private boolean copyOnWrite(ProcessControlBlock pcb) {
+        int segmentSize = pcb.size() + 1;
+        int base = alloc(segmentSize);
+        if (base == ALLOCATION_FAILED) return false;
+        memory.copy(pcb.memoryBaseAddress, base, segmentSize);
+        releaseSegment(pcb.memoryBaseAddress, pcb.memoryLimitAddress);
+        pcb.memoryBaseAddress = base;
+        pcb.memoryLimitAddress = base + segmentSize - 1;
+        cpu.baseRegister = pcb.memoryBaseAddress;
+        cpu.limitRegister = pcb.memoryLimitAddress;
+        ++copyOnWriteCount;
+        return true;
+    }
+
+    // Adds a reference to a segment that is now shared with one more process.
+    private void addReference(int start) {
+        Integer base = Integer.valueOf(start);
+        Integer references = sharedSegments.get(base);
+        sharedSegments.put(base, Integer.valueOf(references == null ? 2 : references.intValue() + 1));
+    }
+
+    // Drops one reference to a segment, freeing it once no process refers to it.
+    private void releaseSegment(int start, int end) {
+        Integer base = Integer.valueOf(start);
+        Integer references = sharedSegments.get(base);
+        if (references == null) {
+            free(start, end);
+        } else if (references.intValue() == 2) {
+            sharedSegments.remove(base);
+        } else {
+            sharedSegments.put(base, Integer.valueOf(references.intValue() - 1));
+        }
+    }
+
+    // Grows the segment of the executing process by one heap increment.
+    public boolean grow() {
+        return grow(DEFAULT_HEAP_SIZE);
+    }
+
+    // A simulated `brk`/`realloc` system call. Grows the segment of the executing process by
+    // `additional` words. If the free segment directly after it is large enough, the segment
+    // is extended into it; otherwise the process is moved to a new, larger segment. Returns
+    // false if there is no room to grow.
+    public boolean grow(int additional) {
+        if (!cpuIsExecutingAUserspaceProcess() || additional <= 0) return false;
+        ProcessControlBlock pcb = currentProcess;
+        int oldSize = pcb.size() + 1;
+        if (!sharedSegments.containsKey(Integer.valueOf(pcb.memoryBaseAddress)) && allocator.extend(pcb.memoryBaseAddress, pcb.memoryLimitAddress + 1, additional, false)) {
+            log("GROW IN PLACE " + pcb.pid + " by " + additional);
+            inPlaceGrowths.put(allocationAlgorithm, Integer.valueOf(inPlaceGrowths.get(allocationAlgorithm).intValue() + 1));
+        } else {
+            log("GROW BY MOVING " + pcb.pid + " by " + additional);
+            int base = alloc(oldSize + additional);
+            if (base == ALLOCATION_FAILED) return false;
+            memory.copy(pcb.memoryBaseAddress, base, oldSize);
+            releaseSegment(pcb.memoryBaseAddress, pcb.memoryLimitAddress);
+            pcb.memoryBaseAddress = base;
+            movedGrowths.put(allocationAlgorithm, Integer.valueOf(movedGrowths.get(allocationAlgorithm).intValue() + 1));
+        }
+        pcb.memoryLimitAddress = pcb.memoryBaseAddress + oldSize + additional - 1;
+        for (int i = pcb.memoryBaseAddress + oldSize; i <= pcb.memoryLimitAddress; ++i) {
+            memory.write(i, pcb.registers[0]); // the program's color
+        }
+        cpu.baseRegister = pcb.memoryBaseAddress;
+        cpu.limitRegister = pcb.memoryLimitAddress;
+        return true;
+    }
+
+    // A simulated `shmget` system call. Returns the id (base address) of the shared memory
+    // segment for a key, allocating a segment of the given size if the key is new. The
+    // segment lives until it is removed with `shmrm` and every process has detached.
+    // Returns -1 if the size is not positive or larger than an arena, or if there is no free
+    // segment large enough.
+    public int shmget(int key, int size) {
+        Integer segment = sharedMemoryKeys.get(Integer.valueOf(key));
+        if (segment != null) return segment.intValue();
+        if (size <= 0 || size > allocator.maximumSegment()) return ALLOCATION_FAILED;
+        int base = alloc(size, true);
+        if (base == ALLOCATION_FAILED) return ALLOCATION_FAILED;
+        sharedMemoryKeys.put(Integer.valueOf(key), Integer.valueOf(base));
+        sharedMemorySizes.put(Integer.valueOf(base), Integer.valueOf(size));
+        return base;
+    }
+
+    // A simulated `shmat` system call. Attaches the executing process to a shared segment.
+    public boolean shmat(int segmentId) {
+        if (!cpuIsExecutingAUserspaceProcess() || !sharedMemorySizes.containsKey(Integer.valueOf(segmentId))) return false;
+        if (currentProcess.attachedSegments.contains(Integer.valueOf(segmentId))) return true;
+        currentProcess.attachedSegments.add(Integer.valueOf(segmentId));
+        addReference(segmentId);
+        return true;
+    }
+
+    // A simulated `shmdt` system call. Detaches the executing process from a shared segment.
+    public boolean shmdt(int segmentId) {
+        if (!cpuIsExecutingAUserspaceProcess() || !currentProcess.attachedSegments.remove(Integer.valueOf(segmentId))) return false;
+        releaseSharedMemory(segmentId);
+        return true;
+    }
+
+    // Removes the key of a shared segment, so that it is freed once every process detaches.
+    public void shmrm(int key) {
+        Integer segment = sharedMemoryKeys.remove(Integer.valueOf(key));
+        if (segment != null) releaseSharedMemory(segment.intValue());
+    }
+
+    // Reads a word of a shared segment the executing process is attached to.
+    public float shmRead(int segmentId, int offset) {
+        if (!canAccessSharedMemory(segmentId, offset)) return 0;
+        return memory.read(segmentId + offset);
+    }
+
+    // Writes a word of a shared segment the executing process is attached to. Unlike a forked
+    // segment, writes are seen by every attached process.
+    public void shmWrite(int segmentId, int offset, float value) {
+        if (canAccessSharedMemory(segmentId, offset)) memory.write(segmentId + offset, value);
+    }
+
+    private boolean canAccessSharedMemory(int segmentId, int offset) {
+        if (!cpuIsExecutingAUserspaceProcess()) return false;
+        Integer size = sharedMemorySizes.get(Integer.valueOf(segmentId));
+        if (size == null || !currentProcess.attachedSegments.contains(Integer.valueOf(segmentId))
+                || offset < 0 || offset >= size.intValue()) {
+            log("TRAP: Segmentation fault in process " + currentProcess.pid);
+            return false;
+        }
+        return true;
+    }
+
+    private void releaseSharedMemory(int segmentId) {
+        int size = sharedMemorySizes.get(Integer.valueOf(segmentId)).intValue();
+        if (!sharedSegments.containsKey(Integer.valueOf(segmentId))) sharedMemorySizes.remove(Integer.valueOf(segmentId));
+        releaseSegment(segmentId, segmentId + size - 1);
+    }
+
+    // A simulated `msgget` system call. Returns the message queue for a key, creating one
+    // that holds up to `capacity` messages if the key is new.
+    public MessageQueue msgget(int key, int capacity) {
+        MessageQueue queue = messageQueues.get(Integer.valueOf(key));
+        if (queue == null) {
+            queue = new MessageQueue(key, capacity);
+            messageQueues.put(Integer.valueOf(key), queue);
+        }
+        return queue;
+    }
+
+    // A simulated `msgsnd` system call. Hands the message straight to the receiver that has
+    // been blocked on the queue the longest and wakes it, or else enqueues it. Returns false
+    // if the queue is full.
+    public boolean send(int key, float message) {
+        MessageQueue queue = messageQueues.get(Integer.valueOf(key));
+        if (queue == null) return false;
+        ProcessControlBlock receiver = queue.wakeReceiver(cpu.cycleCount);
+        if (receiver != null) {
+            receiveWaits.remove(Integer.valueOf(receiver.pid));
+            receiver.registers[CPU.MESSAGE_REGISTER] = message;
+            ++queue.messagesSent;
+            ++queue.messagesReceived;
+            interruptAndUnblock(receiver);
+            return true;
+        }
+        if (!queue.offer(message)) {
+            ++queue.sendsRejected;
+            return false;
+        }
+        ++queue.messagesSent;
+        return true;
+    }
+
+    // A simulated `msgrcv` system call. Places the next message in the message register of the
+    // executing process and returns true, or blocks the process if the queue is empty. A
+    // blocked receiver finds the message in its register once the matching send wakes it.
+    public boolean receive(int key) {
+        MessageQueue queue = messageQueues.get(Integer.valueOf(key));
+        if (queue == null || !cpuIsExecutingAUserspaceProcess()) return false;
+        if (!queue.isEmpty()) {
+            cpu.registers[CPU.MESSAGE_REGISTER] = queue.take();
+            ++queue.messagesReceived;
+            return true;
+        }
+        queue.addReceiver(currentProcess, cpu.cycleCount);
+        receiveWaits.put(Integer.valueOf(currentProcess.pid), queue);
+        currentProcess.waitEventId = key;
+        blockCurrentProcess();
+        return false;
+    }
+
+    // Stops a process waiting to receive a message, as when it is interrupted.
+    private void cancelReceiveWait(ProcessControlBlock pcb) {
+        MessageQueue queue = receiveWaits.remove(Integer.valueOf(pcb.pid));
+        if (queue != null) queue.removeReceiver(pcb);
+    }
+
+    // Returns the resource with an id, creating one with `units` units if the id is new.
+    public Resource createResource(int id, int units) {
+        Resource resource = resources.get(Integer.valueOf(id));
+        if (resource == null) {
+            resource = new Resource(id, units);
+            resources.put(Integer.valueOf(id), resource);
+        }
+        return resource;
+    }
+
+    // Declares the most units of a resource the executing process will hold at once. The
+    // Banker's algorithm requires a claim before each resource is acquired.
+    public void claim(int resourceId, int units) {
+        Resource resource = resources.get(Integer.valueOf(resourceId));
+        if (resource == null || !cpuIsExecutingAUserspaceProcess()) return;
+        if (units > resource.units) {
+            log("TRAP: Process " + currentProcess.pid + " claimed more of resource " + resourceId + " than exists");
+            return;
+        }
+        banker.claim(currentProcess.pid, resourceId, units);
+    }
+
+    // Requests one unit of a resource for the executing process. Returns true if it was
+    // granted at once. Otherwise the process blocks until a unit is handed to it, unless
+    // waiting would deadlock (or, under AVOIDANCE, exceeds its claim), in which case the
+    // request is refused and the process continues without it.
+    public boolean acquire(int resourceId) {
+        Resource resource = resources.get(Integer.valueOf(resourceId));
+        if (resource == null || !cpuIsExecutingAUserspaceProcess()) return false;
+        ProcessControlBlock pcb = currentProcess;
+        if (deadlockPolicy == DeadlockPolicy.AVOIDANCE) {
+            if (resource.held(pcb.pid) >= banker.claimed(pcb.pid, resourceId)) {
+                log("TRAP: Process " + pcb.pid + " exceeded its claim on resource " + resourceId);
+                return false;
             }
-            Integer worstFittingSegmentSize = segmentSizes.lastKey();
-            if (worstFittingSegmentSize.intValue() >= memoryNeeded) {
-                int baseAddress = segmentSizes.get(worstFittingSegmentSize).intValue();
-                int newFreeBaseAddress = baseAddress + memoryNeeded;
-                int newFreeSize = baseAddress + worstFittingSegmentSize.intValue() - newFreeBaseAddress;
-                System.out.println("Found space at: " + baseAddress);
-                System.out.println("Remaining: " + newFreeBaseAddress + "->" + newFreeSize);
-                freeMap.remove(new Integer(baseAddress));
-                freeMap.put(new Integer(newFreeBaseAddress), new Integer(newFreeSize));
-                return baseAddress;
+            if (resource.available > 0 && resource.waiters.isEmpty()
+                    && banker.isSafeToGrant(pcb.pid, resource, resources)) {
+                grant(resource, pcb);
+                return true;
+            }
+            if (resource.available > 0) ++unsafeDelays;
+        } else {
+            if (resource.available > 0) {
+                grant(resource, pcb);
+                return true;
+            }
+            if (waitForGraph.wouldDeadlock(pcb.pid, resource)) {
+                log("DEADLOCK: Process " + pcb.pid + " refused resource " + resourceId);
+                ++deadlocksDetected;
+                return false;
             }
         }
-        return 0; // TODO: Swap!
+        resource.waiters.add(pcb);
+        contendedResources.add(resource);
+        waitForGraph.addWait(pcb.pid, resource);
+        pcb.waitEventId = resourceId;
+        blockCurrentProcess();
+        return false;
     }
 
-    // Simulation of a `free` system call. Adds unallocated process memory to the free list.
-    // Merges any adjacent free segments in the free list.
-    private void free(int start, int end) {
-        System.out.println("FREEDOOOOMMMMM!!!");
-        freeMap.put(new Integer(start), new Integer(end - start + 1));
-        // Merge contiguous blocks, from back to front.
-        ArrayList<Integer> mergedSegmentsToDelete = new ArrayList<Integer>();
-        for (Integer key : freeMap.descendingKeySet()) {
-            Integer nextFreeSegmentBaseAddress = freeMap.lowerKey(key);
-            // System.out.println("Inspecting: " + key + " | floorKey: " + nextFreeSegmentBaseAddress);
-            if (nextFreeSegmentBaseAddress != null && nextFreeSegmentBaseAddress.intValue() + freeMap.get(nextFreeSegmentBaseAddress).intValue() == key.intValue()) {
-                freeMap.put(nextFreeSegmentBaseAddress, new Integer(freeMap.get(key).intValue() + freeMap.get(nextFreeSegmentBaseAddress).intValue()));
-                mergedSegmentsToDelete.add(key);
+    // Returns one unit of a resource held by the executing process, handing it to a waiter.
+    public boolean release(int resourceId) {
+        Resource resource = resources.get(Integer.valueOf(resourceId));
+        if (resource == null || !cpuIsExecutingAUserspaceProcess()) return false;
+        if (!resource.takeBack(currentProcess.pid)) return false;
+        currentProcess.heldResources.remove(Integer.valueOf(resourceId));
+        grantWaiters(resource);
+        return true;
+    }
+
+    private void grant(Resource resource, ProcessControlBlock pcb) {
+        resource.grant(pcb.pid);
+        pcb.heldResources.add(Integer.valueOf(resource.id));
+    }
+
+    // Hands the released units of a resource to blocked waiters. Under AVOIDANCE, a release
+    // may also make another resource's waiters safe, so every contended resource is retried.
+    private void grantWaiters(Resource released) {
+        if (deadlockPolicy == DeadlockPolicy.AVOIDANCE) {
+            for (Resource resource : new ArrayList<Resource>(contendedResources)) handOff(resource);
+        } else {
+            handOff(released);
+        }
+    }
+
+    // Grants available units of a resource to its waiters, in the order they blocked.
+    private void handOff(Resource resource) {
+        while (resource.available > 0 && !resource.waiters.isEmpty()) {
+            ProcessControlBlock waiter = resource.waiters.peek();
+            if (deadlockPolicy == DeadlockPolicy.AVOIDANCE && !banker.isSafeToGrant(waiter.pid, resource, resources)) break;
+            resource.waiters.remove();
+            waitForGraph.removeWait(waiter.pid);
+            grant(resource, waiter);
+            interruptAndUnblock(waiter);
+        }
+        if (resource.waiters.isEmpty()) contendedResources.remove(resource);
+    }
+
+    // Releases every unit held by a terminating process.
+    private void releaseResources(ProcessControlBlock pcb) {
+        ArrayList<Integer> held = new ArrayList<Integer>(pcb.heldResources);
+        pcb.heldResources.clear();
+        banker.forget(pcb.pid);
+        for (Integer resourceId : held) resources.get(resourceId).takeBack(pcb.pid);
+        for (Integer resourceId : held) grantWaiters(resources.get(resourceId));
+    }
+
+    // Stops a process waiting for a resource, as when it is interrupted.
+    private void cancelResourceWait(ProcessControlBlock pcb) {
+        Resource resource = waitForGraph.removeWait(pcb.pid);
+        if (resource == null) return;
+        resource.waiters.remove(pcb);
+        if (resource.waiters.isEmpty()) contendedResources.remove(resource);
+    }
+
+    // Returns the mutex with an id, creating an unlocked one if the id is new.
+    public Mutex createMutex(int id) {
+        Mutex mutex = mutexes.get(Integer.valueOf(id));
+        if (mutex == null) {
+            mutex = new Mutex(id);
+            mutexes.put(Integer.valueOf(id), mutex);
+        }
+        return mutex;
+    }
+
+    // Returns the semaphore with an id, creating one with `value` units if the id is new.
+    public Semaphore createSemaphore(int id, int value) {
+        Semaphore semaphore = semaphores.get(Integer.valueOf(id));
+        if (semaphore == null) {
+            semaphore = new Semaphore(id, value);
+            semaphores.put(Integer.valueOf(id), semaphore);
+        }
+        return semaphore;
+    }
+
+    // Locks a mutex for the executing process. Returns true if it was free. Otherwise the
+    // process parks until an unlock hands the mutex to it.
+    public boolean lock(Mutex mutex) {
+        if (!cpuIsExecutingAUserspaceProcess()) return false;
+        ProcessControlBlock pcb = currentProcess;
+        if (mutex.tryAcquire()) {
+            mutex.owner = pcb;
+            return true;
+        }
+        if (mutex.owner == pcb) {
+            log("TRAP: Process " + pcb.pid + " relocked mutex " + mutex.id);
+            return false;
+        }
+        if (!park(mutex)) return false;
+        mutex.owner = pcb;
+        return true;
+    }
+
+    // Unlocks a mutex held by the executing process, handing it to one waiter, if any.
+    public boolean unlock(Mutex mutex) {
+        if (!cpuIsExecutingAUserspaceProcess()) return false;
+        if (mutex.owner != currentProcess) {
+            log("TRAP: Process " + currentProcess.pid + " unlocked mutex " + mutex.id + " it does not own");
+            return false;
+        }
+        mutex.owner = null;
+        if (priorityInheritance) restorePriority(currentProcess);
+        if (!mutex.tryRelease()) wake(mutex);
+        return true;
+    }
+
+    // Takes a unit of a semaphore for the executing process (P). Returns true if one was
+    // free. Otherwise the process parks until an `up` hands a unit to it.
+    public boolean down(Semaphore semaphore) {
+        if (!cpuIsExecutingAUserspaceProcess()) return false;
+        return semaphore.tryAcquire() || park(semaphore);
+    }
+
+    // Returns a unit of a semaphore (V), handing it to one waiter, if any.
+    public void up(Semaphore semaphore) {
+        if (!semaphore.tryRelease()) wake(semaphore);
+    }
+
+    // The slow path of an acquire. Counts the executing process as a waiter, unless a unit
+    // was returned since the fast path failed, and parks it.
+    private boolean park(Semaphore semaphore) {
+        ++semaphore.slowAcquires;
+        if (semaphore.value.getAndDecrement() > 0) return true;
+        ProcessControlBlock pcb = currentProcess;
+        semaphore.waiters.add(pcb);
+        lockWaits.put(Integer.valueOf(pcb.pid), semaphore);
+        pcb.waitEventId = semaphore.id;
+        if (priorityInheritance && semaphore instanceof Mutex) inheritPriority(((Mutex)semaphore).owner, pcb.priority);
+        blockCurrentProcess();
+        return false;
+    }
+
+    // The slow path of a release. Hands the unit to exactly one waiter, the one that blocked
+    // first, or with priority inheritance, the one with the highest priority.
+    private void wake(Semaphore semaphore) {
+        ++semaphore.slowReleases;
+        if (semaphore.value.getAndIncrement() >= 0) return; // nobody was waiting after all
+        ProcessControlBlock waiter = semaphore.waiters.peek();
+        if (priorityInheritance) {
+            for (ProcessControlBlock pcb : semaphore.waiters) {
+                if (pcb.priority > waiter.priority) waiter = pcb;
             }
         }
-        // Delete the upper part of all merged segments.
-        for (Integer deletableMergedSegmentAddress : mergedSegmentsToDelete)
-            freeMap.remove(deletableMergedSegmentAddress);
-        // Show the freelist, for sanity checking (and demo).
-        System.out.println("Freelist:");
-        for (Integer key : freeMap.keySet()) {
-            System.out.println(key.intValue() + "->\t" + freeMap.get(key).intValue());
+        semaphore.waiters.remove(waiter);
+        lockWaits.remove(Integer.valueOf(waiter.pid));
+        if (semaphore instanceof Mutex) {
+            ((Mutex)semaphore).owner = waiter;
+            if (priorityInheritance) {
+                for (ProcessControlBlock pcb : semaphore.waiters) inheritPriority(waiter, pcb.priority);
+            }
+        }
+        interruptAndUnblock(waiter);
+    }
+
+    // Raises the priority of a mutex owner to that of a process waiting on it, and so on down
+    // the chain if the owner is itself waiting on a mutex.
+    private void inheritPriority(ProcessControlBlock owner, int priority) {
+        while (owner != null && owner.priority < priority) {
+            owner.priority = priority;
+            Semaphore blockedOn = lockWaits.get(Integer.valueOf(owner.pid));
+            owner = blockedOn instanceof Mutex ? ((Mutex)blockedOn).owner : null;
+        }
+    }
+
+    // Drops any inherited priority the process no longer needs, after it unlocks a mutex.
+    private void restorePriority(ProcessControlBlock pcb) {
+        if (pcb.priority == pcb.basePriority) return;
+        int priority = pcb.basePriority;
+        for (Mutex mutex : mutexes.values()) {
+            if (mutex.owner != pcb) continue;
+            for (ProcessControlBlock waiter : mutex.waiters) priority = Math.max(priority, waiter.priority);
+        }
+        pcb.priority = priority;
+    }
+
+    // Unlocks every mutex held by a terminating process, so that its waiters are not stranded.
+    private void releaseMutexes(ProcessControlBlock pcb) {
+        for (Mutex mutex : mutexes.values()) {
+            if (mutex.owner != pcb) continue;
+            mutex.owner = null;
+            if (!mutex.tryRelease()) wake(mutex);
         }
-        // Zero-out the memory, just so we can see visually that it is free.
-        for (int i = start; i <= end; ++i) {
-            memory.write(i, 0);
+    }
+
+    // Stops a process waiting on a mutex or semaphore, as when it is interrupted.
+    private void cancelLockWait(ProcessControlBlock pcb) {
+        Semaphore semaphore = lockWaits.remove(Integer.valueOf(pcb.pid));
+        if (semaphore == null) return;
+        semaphore.waiters.remove(pcb);
+        semaphore.value.incrementAndGet();
+        if (priorityInheritance && semaphore instanceof Mutex) dropInheritedPriority(((Mutex)semaphore).owner);
+    }
+
+    // Drops any priority a mutex owner inherited from a waiter that has stopped waiting, and
+    // so on down the chain if the owner is itself waiting on a mutex.
+    private void dropInheritedPriority(ProcessControlBlock owner) {
+        while (owner != null) {
+            int priority = owner.priority;
+            restorePriority(owner);
+            if (owner.priority == priority) return;
+            Semaphore blockedOn = lockWaits.get(Integer.valueOf(owner.pid));
+            owner = blockedOn instanceof Mutex ? ((Mutex)blockedOn).owner : null;
         }
     }
 
+    // Simulates the loading of a program, whose color is given, into allocated memory.
+    private void storeInMemory(int baseAddress, int memoryNeeded, float color) {
+        for (int i = baseAddress; i < baseAddress + memoryNeeded; ++i) {
+            memory.write(i, color);
+        }
+    }
+
+    // A simulated `malloc` system call. Uses either a FIRST_FIT, BEST_FIT, or WORST_FIT
+    // algorithm. Returns ALLOCATION_FAILED if no free segment is large enough.
+    // TODO: Replace with Strategy pattern.
+    private int alloc(int memoryNeeded) {
+        return alloc(memoryNeeded, false);
+    }
+
+    // Allocates memory that is zero, as for shared memory, rather than memory the caller is
+    // about to overwrite. Prefers free segments that are already zeroed.
+    private int alloc(int memoryNeeded, boolean zeroed) {
+        int baseAddress = tryAlloc(memoryNeeded, zeroed);
+        if (baseAddress == ALLOCATION_FAILED) allocationFailures.incrementAndGet(); // TODO: Swap!
+        return baseAddress;
+    }
+
+    // Allocates without counting a failure, for requests that are retried.
+    private int tryAlloc(int memoryNeeded, boolean zeroed) {
+        int baseAddress = allocator.alloc(memoryNeeded, allocationAlgorithm, zeroed);
+        if (verbose) log("ALLOC " + memoryNeeded + " (" + allocationAlgorithm + "): " + (baseAddress == -1 ? "no space" : "found space at " + baseAddress));
+        return baseAddress == -1 ? ALLOCATION_FAILED : baseAddress;
+    }
+
+    // Simulation of a `free` system call. Adds unallocated process memory to the free list,
+    // which merges it with any adjacent free segments. The memory is zeroed later, so the
+    // cost of a free does not depend on the size of the segment.
+    private void free(int start, int end) {
+        log("FREEDOOOOMMMMM!!!");
+        allocator.free(start, end - start + 1);
+        if (zeroer != null) zeroer.wake();
+        // Show the freelist, for sanity checking (and demo).
+        if (verbose) {
+            log("Freelist:");
+            for (String segment : allocator.describeSegments()) log(segment);
+        }
+        admitWaitingProcesses();
+    }
+
     // Place the currently executing process' PCB at the tail of the ready queue,
     // and restore the execution of the process represented by the PCB at the head
     // of the queue.
     private void switchContext() {
         if (readyQueue.isEmpty()) return;
         if (cpuIsExecutingAUserspaceProcess()) {
-            ProcessControlBlock pcb = new ProcessControlBlock(currentPid, cpu.baseRegister, cpu.limitRegister, cpu.currentProgram);
-            pcb.state = ProcessState.READY;
-            pcb.programCounter = cpu.programCounter;
-            // pcb.registers = cpu.registers.clone();
-            readyQueue.add(pcb);
+            currentProcess.saveContext(cpu);
+            readyQueue.add(currentProcess);
+        }
+        dispatch(nextReady());
+    }
+
+    // Removes the next process to run from the ready queue: its head, or with priority
+    // scheduling, the first process with the highest priority, so that processes of equal
+    // priority still take turns.
+    private ProcessControlBlock nextReady() {
+        if (!priorityScheduling) return readyQueue.remove();
+        ProcessControlBlock next = readyQueue.peek();
+        for (ProcessControlBlock pcb : readyQueue.queue) {
+            if (pcb.priority > next.priority) next = pcb;
         }
-        dispatch(readyQueue.remove());
+        readyQueue.remove(next);
+        return next;
     }
 
     // Simulation of an OS dispatcher. Restores the state of the CPU from a PCB.
     private void dispatch(ProcessControlBlock pcb) {
-        currentPid = pcb.pid;
+        currentProcess = pcb;
         pcb.state = ProcessState.RUNNING;
         cpu.exec(pcb);
     }
@@ -192,15 +860,12 @@ public class OperatingSystem {
     // occurs, and the corresponding view is dimmed to indicate that the process is blocked.
     public void blockCurrentProcess() {
         if (!cpuIsExecutingAUserspaceProcess()) return;
-        ProcessControlBlock pcb = new ProcessControlBlock(currentPid, cpu.baseRegister, cpu.limitRegister, cpu.currentProgram);
-        pcb.state = ProcessState.WAITING;
-        pcb.programCounter = cpu.programCounter;
-        waitQueue.add(pcb);
+        currentProcess.saveContext(cpu);
+        waitQueue.add(currentProcess);
         if (readyQueue.isEmpty()) {
-            cpu.currentProgram = null;
-            cpu.isIdle = true;
+            idle();
         } else {
-            dispatch(readyQueue.remove());
+            dispatch(nextReady());
         }
     }
 
@@ -209,27 +874,55 @@ public class OperatingSystem {
     // queue.
     public void interruptAndUnblock(ProcessControlBlock pcb) {
         if (waitQueue.remove(pcb)) {
+            cancelReceiveWait(pcb);
+            cancelResourceWait(pcb);
+            cancelLockWait(pcb);
             pcb.state = ProcessState.READY;
             readyQueue.add(pcb);
         }
     }
 
+    // Starts zeroing freed memory in the background, so that it is zero sooner (and shows as
+    // free in the visual simulation) and allocations find more of it already zeroed.
+    public void startZeroer() {
+        if (zeroer != null) return;
+        zeroer = new MemoryZeroer(allocator);
+        zeroer.start();
+    }
+
+    public void stopZeroer() {
+        if (zeroer == null) return;
+        zeroer.stop();
+        zeroer = null;
+    }
+
     // Simulates a `kill` system call. Frees the memory for a process, terminates it, and
     // interrupts the CPU to dispatch the next ready process.
     public void killCurrentProcess() {
         if (cpu.isIdle) return;
-        free(cpu.baseRegister, cpu.limitRegister);
+        releaseSegment(cpu.baseRegister, cpu.limitRegister);
+        for (Integer segment : currentProcess.attachedSegments) releaseSharedMemory(segment.intValue());
+        currentProcess.attachedSegments.clear();
+        releaseResources(currentProcess);
+        releaseMutexes(currentProcess);
+        currentProcess.state = ProcessState.TERMINATED;
         if (readyQueue.isEmpty()) {
-            cpu.isIdle = true;
-            cpu.currentProgram = null;
+            idle();
         } else {
-            dispatch(readyQueue.remove());
+            dispatch(nextReady());
         }
     }
 
+    // Nothing is ready, so the CPU falls back to the kernel idle process.
+    private void idle() {
+        currentProcess = null;
+        cpu.currentProgram = null;
+        cpu.isIdle = true;
+    }
+
     // A naive simulation of determining if a process has received enough CPU time.
     private boolean roundRobinCycleLimitReached() {
-        return cpu.cycleCount % ROUND_ROBIN_CYCLE_LIMIT == 0;
+        return cpu.cycleCount % quantum == 0;
     }
 
     // In this simulation, process id 0 is the kernel idle process; all other
@@ -238,4 +931,139 @@ public class OperatingSystem {
         return !cpu.isIdle;
     }
 
+    // The PCB of the process on the CPU, or null if the kernel idle process is running.
+    public ProcessControlBlock currentProcess() {
+        return currentProcess;
+    }
+
+    // The number of new processes waiting for memory.
+    public int admissionQueueLength() {
+        return admissionQueue.queue.size();
+    }
+
+    // The longest the admission queue has been.
+    public int maxAdmissionQueueLength() {
+        return maxAdmissionQueueLength;
+    }
+
+    // Starts measuring the longest admission queue afresh, from its current length.
+    public void resetMaxAdmissionQueueLength() {
+        maxAdmissionQueueLength = admissionQueue.queue.size();
+    }
+
+    // The number of processes that had to wait in the admission queue.
+    public int delayedAdmissions() {
+        return delayedAdmissions;
+    }
+
+    // Cycles spent in the admission queue by processes that had to wait.
+    public long totalAdmissionWait() {
+        return totalAdmissionWait;
+    }
+
+    // Mean cycles spent in the admission queue by processes that had to wait.
+    public double meanAdmissionWait() {
+        return delayedAdmissions == 0 ? 0 : (double)totalAdmissionWait / delayedAdmissions;
+    }
+
+    // The number of allocation requests that found no hole large enough. A process awaiting
+    // admission counts once, the first time it is tried and does not fit.
+    public int allocationFailures() {
+        return allocationFailures.get();
+    }
+
+    // The number of processes created by `fork`.
+    public int forkCount() {
+        return forkCount;
+    }
+
+    // The number of private copies made when a process wrote to a shared segment.
+    public int copyOnWriteCount() {
+        return copyOnWriteCount;
+    }
+
+    // The number of segments grown into the free segment after them, using an algorithm.
+    public int inPlaceGrowthCount(MemoryAllocationAlgorithm algorithm) {
+        return inPlaceGrowths.get(algorithm).intValue();
+    }
+
+    // The number of segments that had to be moved to grow, using an algorithm.
+    public int movedGrowthCount(MemoryAllocationAlgorithm algorithm) {
+        return movedGrowths.get(algorithm).intValue();
+    }
+
+    // The number of resource requests refused because they would have deadlocked.
+    public int deadlocksDetected() {
+        return deadlocksDetected;
+    }
+
+    // The number of resource requests delayed by the Banker's algorithm as unsafe.
+    public int unsafeDelays() {
+        return unsafeDelays;
+    }
+
+    // Mutex and semaphore operations that completed with a single compare-and-set.
+    public long fastLockOperations() {
+        long operations = 0;
+        for (Mutex mutex : mutexes.values()) operations += mutex.fastOperations();
+        for (Semaphore semaphore : semaphores.values()) operations += semaphore.fastOperations();
+        return operations;
+    }
+
+    // Mutex and semaphore operations that had to park or wake a process.
+    public long slowLockOperations() {
+        long operations = 0;
+        for (Mutex mutex : mutexes.values()) operations += mutex.slowOperations();
+        for (Semaphore semaphore : semaphores.values()) operations += semaphore.slowOperations();
+        return operations;
+    }
+
+    public WaitForGraph waitForGraph() {
+        return waitForGraph;
+    }
+
+    public Banker banker() {
+        return banker;
+    }
+
+    // Sum of the sizes of all segments in the free list.
+    public int totalFreeMemory() {
+        return allocator.totalFree();
+    }
+
+    // Size of the largest segment in the free list.
+    public int largestFreeSegment() {
+        return allocator.largestSegment();
+    }
+
+    // Free memory that is already zeroed.
+    public int preZeroedMemory() {
+        return allocator.preZeroed();
+    }
+
+    // Words of freed memory zeroed per microsecond, lazily or in the background.
+    public double zeroingThroughput() {
+        long[] totals = allocator.zeroingTotals();
+        return totals[1] == 0 ? 0 : totals[0] * 1000.0 / totals[1];
+    }
+
+    // The number of segments in the free list.
+    public int freeSegmentCount() {
+        return allocator.segmentCount();
+    }
+
+    // The number of free segments of each power-of-two size, over all arenas.
+    public int[] freeSegmentHistogram() {
+        return allocator.histogram();
+    }
+
+    // 1 - (largest free segment / free memory).
+    public double externalFragmentation() {
+        return allocator.externalFragmentation();
+    }
+
+    private void log(String message) {
+        if (verbose) System.out.println(message);
+    }
+
 }
\ No newline at end of file
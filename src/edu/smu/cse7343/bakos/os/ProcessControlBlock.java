@@ -10,20 +10,26 @@
 
 package edu.smu.cse7343.bakos.os;
 
+import java.util.*;
 import processing.core.*;
 
 public class ProcessControlBlock {
 
-    private int parentPid; // Ignoring this in simulator,
-    private int userId;    // just providing for consistency
-    private int groupId;   // and understanding.
+    public int parentPid;  // Set for processes created by fork
+    private int userId;    // Ignoring these in simulator, just providing
+    private int groupId;   // for consistency and understanding.
 
-    private int priority;    // TODO
+    public int priority;     // Higher runs first with priority scheduling; may be raised by priority inheritance
+    public int basePriority; // The priority to return to once no longer inherited
     private int lastCycle;   // The last time this pcb was executed
-    private int waitEventId; // Resource of id waiting for when in WAIT
+    public int waitEventId;  // Resource of id waiting for when in WAIT
     private int cycleCount;  // Amount of CPU time accumulated
     public int memoryBaseAddress;
     public int memoryLimitAddress;
+    public long arrivalCycle; // CPU cycle at which the process was created
+    boolean allocationFailed; // Already counted as an allocation failure while awaiting admission
+    public ArrayList<Integer> attachedSegments; // Base addresses of attached shared memory
+    public ArrayList<Integer> heldResources;    // Ids of resources held, once per unit
 
     public int pid;
     public ProcessState state;
@@ -37,6 +43,31 @@ public class ProcessControlBlock {
         state = ProcessState.NEW;
         programCounter = 0;
         registers = new float[CPU.NUMBER_OF_REGISTERS];
+        attachedSegments = new ArrayList<Integer>();
+        heldResources = new ArrayList<Integer>();
+        storeProgramState(program);
+    }
+
+    // Rebuilds a PCB from saved register data, as when restoring a Checkpoint.
+    ProcessControlBlock(int pid, int base, int limit, float[] registers) {
+        this.pid = pid;
+        memoryBaseAddress = base;
+        memoryLimitAddress = limit;
+        state = ProcessState.NEW;
+        this.registers = registers;
+        attachedSegments = new ArrayList<Integer>();
+        heldResources = new ArrayList<Integer>();
+    }
+
+    // Captures the state of the CPU when the process is preempted or blocked, so that it can
+    // be restored by a later dispatch.
+    public void saveContext(CPU cpu) {
+        programCounter = cpu.programCounter;
+        registers[CPU.MESSAGE_REGISTER] = cpu.registers[CPU.MESSAGE_REGISTER];
+        storeProgramState(cpu.currentProgram);
+    }
+
+    private void storeProgramState(Program program) {
         registers[0] = Float.intBitsToFloat(program.color);
         registers[1] = program.size;
         registers[2] = program.xoff;
@@ -46,6 +77,10 @@ public class ProcessControlBlock {
         registers[6] = program.location.y;
     }
 
+    public void setPriority(int priority) {
+        this.priority = basePriority = priority;
+    }
+
     // Base address - limit. A convenience method.
     public int size() {
         return memoryLimitAddress - memoryBaseAddress;
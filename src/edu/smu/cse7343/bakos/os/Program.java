@@ -52,6 +52,7 @@ public class Program {
     }
 
     public void step() {
+        if (p == null) return; // headless: there is no screen or mouse to move around
         PVector acceleration = acceleration();
         acceleration.mult(ACCELERATION_SCALE);
         velocity.add(acceleration);
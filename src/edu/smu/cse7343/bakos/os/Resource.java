@@ -0,0 +1,61 @@
+/*
+    Resource.java
+    @author Yong Joseph Bakos
+
+    This class represents a simulated resource, such as a device or a lock, with a fixed
+    number of identical units. Processes acquire and release units one at a time through
+    OperatingSystem#acquire and OperatingSystem#release, and a process that finds no unit
+    available waits, blocked, in the resource's queue of waiters.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.*;
+
+public class Resource {
+
+    public final int id;
+    public final int units;
+    int available;
+    HashMap<Integer, Integer> holders;        // pid -> units held
+    LinkedList<ProcessControlBlock> waiters;  // Blocked acquirers, in arrival order
+
+    public Resource(int id, int units) {
+        this.id = id;
+        this.units = units;
+        available = units;
+        holders = new HashMap<Integer, Integer>();
+        waiters = new LinkedList<ProcessControlBlock>();
+    }
+
+    public int available() {
+        return available;
+    }
+
+    // The number of units held by a process.
+    public int held(int pid) {
+        Integer count = holders.get(Integer.valueOf(pid));
+        return count == null ? 0 : count.intValue();
+    }
+
+    public int waiting() {
+        return waiters.size();
+    }
+
+    // Hands one unit to a process.
+    void grant(int pid) {
+        --available;
+        holders.put(Integer.valueOf(pid), Integer.valueOf(held(pid) + 1));
+    }
+
+    // Takes one unit back from a process. Returns false if it held none.
+    boolean takeBack(int pid) {
+        int count = held(pid);
+        if (count == 0) return false;
+        if (count == 1) holders.remove(Integer.valueOf(pid));
+        else holders.put(Integer.valueOf(pid), Integer.valueOf(count - 1));
+        ++available;
+        return true;
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+    Semaphore.java
+    @author Yong Joseph Bakos
+
+    This class represents a counting semaphore for simulated processes, in the style of a
+    futex. Its state is one atomic word: a positive value is the number of free units, and a
+    negative value is the number of processes waiting for one. Taking a free unit, or
+    returning one when nobody is waiting, is a single compare-and-set on the word, without
+    entering the kernel. Only when the compare-and-set finds no unit (or, on release, finds
+    waiters) does OperatingSystem park the process on the wait list, or hand the unit
+    straight to one waiter.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+public class Semaphore {
+
+    public final int id;
+    final AtomicInteger value;                // Free units, or minus the number of waiters
+    LinkedList<ProcessControlBlock> waiters;  // Parked processes, in the order they blocked
+
+    // Statistics
+    long fastAcquires;
+    long slowAcquires;
+    long fastReleases;
+    long slowReleases;
+
+    public Semaphore(int id, int value) {
+        this.id = id;
+        this.value = new AtomicInteger(value);
+        waiters = new LinkedList<ProcessControlBlock>();
+    }
+
+    public int value() {
+        return value.get();
+    }
+
+    // The fast path of an acquire: takes a free unit, if there is one.
+    boolean tryAcquire() {
+        int units = value.get();
+        if (units > 0 && value.compareAndSet(units, units - 1)) {
+            ++fastAcquires;
+            return true;
+        }
+        return false;
+    }
+
+    // The fast path of a release: returns a unit, if nobody is waiting for it.
+    boolean tryRelease() {
+        int units = value.get();
+        if (units >= 0 && value.compareAndSet(units, units + 1)) {
+            ++fastReleases;
+            return true;
+        }
+        return false;
+    }
+
+    public long fastOperations() {
+        return fastAcquires + fastReleases;
+    }
+
+    public long slowOperations() {
+        return slowAcquires + slowReleases;
+    }
+
+}
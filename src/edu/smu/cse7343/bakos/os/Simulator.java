@@ -36,6 +36,7 @@ public class Simulator extends PApplet {
         cpu = new CPU();
         memory = new Memory(width - 200); // simulated size, per screen width
         os = new OperatingSystem(cpu, memory);
+        os.startZeroer();
         Program.initialize(this); // program code needs to use handy Processing functions
         memoryView = new MemoryView(memory, 100, height - 800, this);
         cpuView = new CPUView(cpu, 200, height - 500, this);
@@ -51,6 +52,7 @@ public class Simulator extends PApplet {
         background(0);
         drawTitle();
         drawAllocationSelectionMenu();
+        drawFragmentationStatistics();
         memoryView.draw();
         osView.draw();
         cpuView.draw();
@@ -59,14 +61,24 @@ public class Simulator extends PApplet {
     // This really is a true interrupt handler, and I use it to simulate interrupts. Pressing
     // the space bar will spawn a new process, adding it to the ready queue. Pressing the B
     // key will cause the currently executing process to self-block, to "fake" waiting for a
-    // resource such as some abstract I/O.
+    // resource such as some abstract I/O. The F key forks the currently executing process, and
+    // the G key grows its memory segment. System calls are submitted to the kernel, which
+    // carries them out at the start of the next `draw`, so the queues never change mid-draw.
     public void keyPressed() {
         if (key == ' ') {
-            os.exec();
+            os.submitExec(new Program()); // load program from disk
         } else if (key == 'b') {
-            os.blockCurrentProcess();
+            os.submitBlock();
         } else if (key == 'k') {
-            os.killCurrentProcess();
+            os.submitKill();
+        } else if (key == 'f') {
+            os.submit(new Runnable() {
+                public void run() { os.fork(); }
+            });
+        } else if (key == 'g') {
+            os.submit(new Runnable() {
+                public void run() { os.grow(); }
+            });
         }
         if (key == '1') {
             os.allocationAlgorithm = MemoryAllocationAlgorithm.FIRST_FIT;
@@ -74,6 +86,8 @@ public class Simulator extends PApplet {
             os.allocationAlgorithm = MemoryAllocationAlgorithm.BEST_FIT;
         } else if (key == '3') {
             os.allocationAlgorithm = MemoryAllocationAlgorithm.WORST_FIT;
+        } else if (key == 'p') {
+            os.admissionPolicy = os.admissionPolicy == AdmissionPolicy.FIFO ? AdmissionPolicy.SMALLEST_FIRST : AdmissionPolicy.FIFO;
         }
     }
 
@@ -83,7 +97,7 @@ public class Simulator extends PApplet {
     public void mousePressed() {
         for (ProcessControlBlock pcb : os.waitQueue.queue) {
             if (pcb.state == ProcessState.WAITING && dist(mouseX, mouseY, pcb.registers[5], pcb.registers[6]) < (pcb.registers[1] / 2) ) {
-                os.interruptAndUnblock(pcb);
+                os.submitUnblock(pcb);
                 break;
             }
         }
@@ -116,6 +130,35 @@ public class Simulator extends PApplet {
         if (os.allocationAlgorithm == MemoryAllocationAlgorithm.WORST_FIT) fill(200, 255, 200);
         else fill(150);
         text("3. Worst Fit", width / 2, height / 2 + 120);
+        fill(150);
+        text("Admission Queue (P to change policy): " + os.admissionQueueLength() + " waiting, " + os.admissionPolicy,
+             width / 2, height / 2 + 160);
+    }
+
+    // Shows the free list statistics the allocator maintains, beside the allocation menu: free
+    // memory, holes, external fragmentation, and a histogram of hole sizes by power of two.
+    private void drawFragmentationStatistics() {
+        int x = width / 2 + 250;
+        int y = height / 2;
+        textAlign(LEFT);
+        textSize(18);
+        fill(150);
+        text("Free Memory: " + os.totalFreeMemory() + " (" + os.preZeroedMemory() + " zeroed)", x, y + 40);
+        text("Holes: " + os.freeSegmentCount() + ", largest " + os.largestFreeSegment(), x, y + 70);
+        text("External Fragmentation: " + nf((float)(os.externalFragmentation() * 100), 1, 1) + "%", x, y + 100);
+        int[] histogram = os.freeSegmentHistogram();
+        int highestBucket = 0;
+        for (int i = 0; i < histogram.length; ++i) {
+            if (histogram[i] > 0) highestBucket = i;
+        }
+        textSize(10);
+        for (int i = 0; i <= highestBucket; ++i) {
+            fill(200, 255, 200);
+            rect(x + i * 20, y + 150 - histogram[i] * 5, 14, histogram[i] * 5);
+            fill(150);
+            text(i, x + i * 20 + 3, y + 162);
+        }
+        text("Hole sizes (log2)", x, y + 176);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,218 @@
+/*
+    SweepRunner.java
+    @author Yong Joseph Bakos
+
+    A command-line alternative to Main that runs the simulated kernel headless over a grid of
+    configurations (allocation algorithm x memory size x round-robin quantum), all sharing one
+    workload, and prints a summary table. Simulations are independent, so they are spread
+    across all cores with fork/join.
+
+    Example:
+        java -cp build/classes:lib/* edu.smu.cse7343.bakos.os.SweepRunner \
+            --arrival 0.05 --sizes uniform:36:144 --block 0.01 --kill 0.02 \
+            --memory 1000,4000 --quanta 10,30 --cycles 100000
+
+    A warmed-up system can be saved with --save-checkpoint (for a single configuration), and
+    every configuration can then start from it with --checkpoint, in which case the memory
+    size comes from the checkpoint.
+
+    With --metrics DIR, each configuration also records a compressed time series of its queue
+    lengths, running pid and free memory, every --sample cycles, to a file in DIR named after
+    the configuration (with the checkpoint's name in place of the memory size, when starting
+    from one). Read it back with MetricsReader.
+
+    With --priorities LEVELS, each new process gets a random priority below LEVELS, each
+    context switch dispatches the ready process with the highest priority, and a mutex owner
+    inherits the priority of the processes waiting on it.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class SweepRunner {
+
+    private static final String USAGE =
+        "Usage: SweepRunner [--arrival RATE] [--sizes uniform:MIN:MAX|exponential:MEAN]\n" +
+        "                   [--block P] [--unblock P] [--kill P] [--fork P] [--write P]\n" +
+        "                   [--message P] [--grow P] [--growth WORDS] [--lock P]\n" +
+        "                   [--priorities LEVELS]\n" +
+        "                   [--algorithms FIRST_FIT,BEST_FIT,WORST_FIT] [--memory SIZE,...]\n" +
+        "                   [--quanta CYCLES,...] [--admission FIFO|SMALLEST_FIRST]\n" +
+        "                   [--cache flush|warm] [--zeroing lazy|background]\n" +
+        "                   [--cycles N] [--seed N]\n" +
+        "                   [--checkpoint FILE] [--save-checkpoint FILE]\n" +
+        "                   [--metrics DIR] [--sample CYCLES]";
+
+    private static final String HEADER_FORMAT =
+        "%-10s %8s %7s %8s %8s %8s %8s %8s %8s %8s %8s %8s %8s %8s %7s %7s %7s %11s %8s %8s %8s %8s %8s %8s";
+    private static final String ROW_FORMAT =
+        "%-10s %8d %7d %8d %8d %8d %8.1f %8d %8d %8d %8.1f %8d %8d %8.3f %7.3f %7.3f %7.3f %11.3f %8.3f %8.3f %8.1f %8d %8d %8d";
+    private static final int CACHE_PROCESSES_SHOWN = 3;
+
+    public static void main(String[] args) {
+        Workload workload = new Workload();
+        List<MemoryAllocationAlgorithm> algorithms = Arrays.asList(MemoryAllocationAlgorithm.values());
+        List<Integer> memorySizes = Arrays.asList(1000, 4000);
+        List<Integer> quanta = Arrays.asList(OperatingSystem.ROUND_ROBIN_CYCLE_LIMIT);
+        long cycles = 100000;
+        long seed = 7343;
+        AdmissionPolicy admissionPolicy = AdmissionPolicy.FIFO;
+        String cacheMode = null;
+        String zeroing = "lazy";
+        int priorityLevels = 1;
+        Path startCheckpoint = null;
+        Path saveCheckpoint = null;
+        Path metricsDirectory = null;
+        int sampleInterval = 1;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+                String value = args[i + 1];
+                if (args[i].equals("--arrival")) workload.arrivalRate = Double.parseDouble(value);
+                else if (args[i].equals("--sizes")) workload.setSizeDistribution(value);
+                else if (args[i].equals("--block")) workload.blockProbability = Double.parseDouble(value);
+                else if (args[i].equals("--unblock")) workload.unblockProbability = Double.parseDouble(value);
+                else if (args[i].equals("--kill")) workload.killRate = Double.parseDouble(value);
+                else if (args[i].equals("--fork")) workload.forkRate = Double.parseDouble(value);
+                else if (args[i].equals("--write")) workload.writeRate = Double.parseDouble(value);
+                else if (args[i].equals("--message")) workload.messageRate = Double.parseDouble(value);
+                else if (args[i].equals("--grow")) workload.growRate = Double.parseDouble(value);
+                else if (args[i].equals("--growth")) workload.growthSize = Integer.parseInt(value);
+                else if (args[i].equals("--lock")) workload.lockRate = Double.parseDouble(value);
+                else if (args[i].equals("--priorities")) priorityLevels = Integer.parseInt(value);
+                else if (args[i].equals("--algorithms")) algorithms = parseAlgorithms(value);
+                else if (args[i].equals("--memory")) memorySizes = parseIntegers(value);
+                else if (args[i].equals("--quanta")) quanta = parseIntegers(value);
+                else if (args[i].equals("--admission")) admissionPolicy = AdmissionPolicy.valueOf(value);
+                else if (args[i].equals("--cache")) cacheMode = value;
+                else if (args[i].equals("--zeroing")) zeroing = value;
+                else if (args[i].equals("--cycles")) cycles = Long.parseLong(value);
+                else if (args[i].equals("--seed")) seed = Long.parseLong(value);
+                else if (args[i].equals("--checkpoint")) startCheckpoint = Paths.get(value);
+                else if (args[i].equals("--save-checkpoint")) saveCheckpoint = Paths.get(value);
+                else if (args[i].equals("--metrics")) metricsDirectory = Paths.get(value);
+                else if (args[i].equals("--sample")) sampleInterval = Integer.parseInt(value);
+                else throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            if (cacheMode != null && !cacheMode.equals("flush") && !cacheMode.equals("warm")) {
+                throw new IllegalArgumentException("Unknown cache mode: " + cacheMode);
+            }
+            if (!zeroing.equals("lazy") && !zeroing.equals("background")) {
+                throw new IllegalArgumentException("Unknown zeroing mode: " + zeroing);
+            }
+            if (sampleInterval < 1) throw new IllegalArgumentException("--sample must be positive");
+            if (priorityLevels < 1) throw new IllegalArgumentException("--priorities must be positive");
+            if (startCheckpoint != null) memorySizes = Arrays.asList(0);
+            if (saveCheckpoint != null && algorithms.size() * memorySizes.size() * quanta.size() != 1) {
+                throw new IllegalArgumentException("--save-checkpoint requires a single configuration");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        List<HeadlessSimulation> grid = new ArrayList<HeadlessSimulation>();
+        for (MemoryAllocationAlgorithm algorithm : algorithms) {
+            for (Integer memorySize : memorySizes) {
+                for (Integer quantum : quanta) {
+                    HeadlessSimulation simulation = new HeadlessSimulation(algorithm, memorySize.intValue(), quantum.intValue(), workload, cycles, seed);
+                    simulation.startCheckpoint = startCheckpoint;
+                    simulation.saveCheckpoint = saveCheckpoint;
+                    simulation.admissionPolicy = admissionPolicy;
+                    simulation.modelCache = cacheMode != null;
+                    simulation.flushCacheOnContextSwitch = "flush".equals(cacheMode);
+                    simulation.backgroundZeroing = zeroing.equals("background");
+                    simulation.priorityLevels = priorityLevels;
+                    if (metricsDirectory != null) {
+                        String memory = startCheckpoint == null ? memorySize.toString() : baseName(startCheckpoint);
+                        simulation.metricsFile = metricsDirectory.resolve(algorithm + "-" + memory + "-" + quantum + ".metrics");
+                        simulation.metricsInterval = sampleInterval;
+                    }
+                    grid.add(simulation);
+                }
+            }
+        }
+        HeadlessSimulation[] simulations = grid.toArray(new HeadlessSimulation[grid.size()]);
+        long startTime = System.nanoTime();
+        new ForkJoinPool().invoke(new SweepTask(simulations, 0, simulations.length));
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+        System.out.println("Workload: " + workload + " cycles=" + cycles + " seed=" + seed + " admission=" + admissionPolicy
+            + (cacheMode == null ? "" : " cache=" + cacheMode) + " zeroing=" + zeroing
+            + (priorityLevels > 1 ? " priorities=" + priorityLevels : ""));
+        System.out.println(String.format(HEADER_FORMAT,
+            "algorithm", "memory", "quantum", "created", "done", "queued", "adm wait", "max adm",
+            "copies", "messages", "msg wait", "in place", "moved", "fastlock", "L1 hit", "L2 hit", "qL1 hit",
+            "done/1kcyc", "frag", "zeroed", "zero w/us", "p50", "p90", "p99"));
+        for (HeadlessSimulation s : simulations) {
+            System.out.println(String.format(ROW_FORMAT,
+                s.algorithm, s.memorySize, s.quantum, s.processesCreated, s.processesCompleted,
+                s.delayedAdmissions, s.meanAdmissionWait, s.maxAdmissionQueueLength,
+                s.copiesOnWrite, s.messagesReceived, s.messageBlockingLatency, s.inPlaceGrowths, s.movedGrowths, s.fastLockRatio,
+                s.l1HitRate, s.l2HitRate, s.meanQuantumL1HitRate,
+                s.throughput, s.meanFragmentation, s.meanPreZeroed, s.zeroingThroughput, s.latencyPercentiles[0], s.latencyPercentiles[1], s.latencyPercentiles[2]));
+        }
+        if (cacheMode != null) {
+            System.out.println("Per-process cache statistics, with the " + CACHE_PROCESSES_SHOWN + " busiest processes:");
+            for (HeadlessSimulation s : simulations) printProcessCacheStatistics(s);
+        }
+        System.out.println(simulations.length + " simulations in " + elapsedMillis + " ms on "
+            + Runtime.getRuntime().availableProcessors() + " cores.");
+        if (metricsDirectory != null) {
+            long metricsBytes = 0;
+            for (HeadlessSimulation s : simulations) metricsBytes += s.metricsBytes;
+            System.out.println("Metrics: " + metricsBytes + " bytes in " + metricsDirectory + ".");
+        }
+    }
+
+    // Prints the spread of per-process L1 hit rates of a configuration, and the statistics of
+    // the processes that accessed memory the most.
+    private static void printProcessCacheStatistics(HeadlessSimulation s) {
+        List<CacheStatistics> processes = new ArrayList<CacheStatistics>();
+        for (CacheStatistics process : s.cache.processStatistics()) {
+            if (process.accesses() > 0) processes.add(process);
+        }
+        Collections.sort(processes, new Comparator<CacheStatistics>() {
+            public int compare(CacheStatistics a, CacheStatistics b) {
+                return Double.compare(a.l1HitRate(), b.l1HitRate());
+            }
+        });
+        String spread = processes.isEmpty() ? "" : String.format(", L1 hit rate min %.3f p50 %.3f max %.3f",
+            processes.get(0).l1HitRate(), processes.get(processes.size() / 2).l1HitRate(),
+            processes.get(processes.size() - 1).l1HitRate());
+        System.out.println(s.algorithm + " " + s.memorySize + " " + s.quantum + ": " + processes.size() + " processes"
+            + spread + ", " + s.cache.l2.writeBacksReceived() + " L1 write-backs to L2");
+        Collections.sort(processes, new Comparator<CacheStatistics>() {
+            public int compare(CacheStatistics a, CacheStatistics b) {
+                return Long.compare(b.accesses(), a.accesses());
+            }
+        });
+        for (CacheStatistics process : processes.subList(0, Math.min(CACHE_PROCESSES_SHOWN, processes.size()))) {
+            System.out.println("    " + process);
+        }
+    }
+
+    // The file name without its extension, as in "warm" for "checkpoints/warm.ckpt".
+    private static String baseName(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static List<MemoryAllocationAlgorithm> parseAlgorithms(String value) {
+        List<MemoryAllocationAlgorithm> algorithms = new ArrayList<MemoryAllocationAlgorithm>();
+        for (String name : value.split(",")) algorithms.add(MemoryAllocationAlgorithm.valueOf(name.trim()));
+        return algorithms;
+    }
+
+    private static List<Integer> parseIntegers(String value) {
+        List<Integer> integers = new ArrayList<Integer>();
+        for (String number : value.split(",")) integers.add(Integer.valueOf(number.trim()));
+        return integers;
+    }
+
+}
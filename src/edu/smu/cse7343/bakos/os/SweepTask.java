@@ -0,0 +1,36 @@
+/*
+    SweepTask.java
+    @author Yong Joseph Bakos
+
+    A fork/join task that runs a range of independent headless simulations, splitting the
+    range in half until each subtask holds a single simulation.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.concurrent.*;
+
+public class SweepTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private HeadlessSimulation[] simulations;
+    private int start;
+    private int end; // exclusive
+
+    public SweepTask(HeadlessSimulation[] simulations, int start, int end) {
+        this.simulations = simulations;
+        this.start = start;
+        this.end = end;
+    }
+
+    protected void compute() {
+        if (end - start <= 1) {
+            if (end > start) simulations[start].run();
+        } else {
+            int middle = (start + end) >>> 1;
+            invokeAll(new SweepTask(simulations, start, middle), new SweepTask(simulations, middle, end));
+        }
+    }
+
+}
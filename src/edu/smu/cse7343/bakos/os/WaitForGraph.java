@@ -0,0 +1,112 @@
+/*
+    WaitForGraph.java
+    @author Yong Joseph Bakos
+
+    This class maintains the wait-for graph of processes blocked on resources. Its edges are
+    not stored explicitly: a blocked process waits for the resource it is blocked on, and
+    that resource waits for each of its current holders. Blocking and unblocking a process
+    add and remove one entry, and a change of holder changes the edges for free.
+
+    Since the kernel never lets a process block if that would close a cycle, the graph stays
+    acyclic, and the only cycle a new wait could create must pass through the new edge. So
+    `wouldDeadlock` only searches from the resource being requested, through the holders and
+    the resources they are blocked on in turn. With single-unit resources, every process
+    waits for at most one other, and the search is a walk along one chain of waiters, no
+    matter how many other processes are blocked. With multi-unit resources, a cycle is
+    necessary but not sufficient for deadlock, so detection is conservative.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.*;
+
+public class WaitForGraph {
+
+    private HashMap<Integer, Resource> waitingFor; // pid -> resource it is blocked on
+
+    // Statistics, for measuring the cost of detection
+    long checks;
+    long processesVisited;
+
+    public WaitForGraph() {
+        waitingFor = new HashMap<Integer, Resource>();
+    }
+
+    // Returns true if the process would be part of a cycle by waiting for the resource.
+    public boolean wouldDeadlock(int pid, Resource resource) {
+        ++checks;
+        ArrayDeque<Resource> frontier = new ArrayDeque<Resource>();
+        HashSet<Integer> visited = null; // Only needed once the search branches
+        frontier.push(resource);
+        while (!frontier.isEmpty()) {
+            Resource next = frontier.pop();
+            if (visited == null && next.holders.size() > 1) visited = new HashSet<Integer>();
+            for (Integer holder : next.holders.keySet()) {
+                ++processesVisited;
+                if (holder.intValue() == pid) return true;
+                if (visited != null && !visited.add(holder)) continue;
+                Resource blockedOn = waitingFor.get(holder);
+                if (blockedOn != null) frontier.push(blockedOn);
+            }
+        }
+        return false;
+    }
+
+    // Searches the whole graph for a cycle, visiting every blocked process, and returns the
+    // pid of a process on one, or -1. The incremental check makes this unnecessary; it is
+    // here to compare against.
+    public int findCycle() {
+        HashMap<Integer, Boolean> onPath = new HashMap<Integer, Boolean>(); // false once finished
+        ArrayDeque<Integer> path = new ArrayDeque<Integer>();
+        ArrayDeque<Iterator<Integer>> edges = new ArrayDeque<Iterator<Integer>>();
+        for (Integer start : waitingFor.keySet()) {
+            if (onPath.containsKey(start)) continue;
+            onPath.put(start, Boolean.TRUE);
+            path.push(start);
+            edges.push(waitingFor.get(start).holders.keySet().iterator());
+            while (!path.isEmpty()) {
+                if (!edges.peek().hasNext()) {
+                    onPath.put(path.pop(), Boolean.FALSE);
+                    edges.pop();
+                    continue;
+                }
+                Integer holder = edges.peek().next();
+                Boolean state = onPath.get(holder);
+                if (state == Boolean.TRUE) return holder.intValue();
+                if (state != null) continue;
+                onPath.put(holder, Boolean.TRUE);
+                path.push(holder);
+                Resource blockedOn = waitingFor.get(holder);
+                edges.push(blockedOn == null ? Collections.<Integer>emptyIterator() : blockedOn.holders.keySet().iterator());
+            }
+        }
+        return -1;
+    }
+
+    void addWait(int pid, Resource resource) {
+        waitingFor.put(Integer.valueOf(pid), resource);
+    }
+
+    // Removes the process's wait, returning the resource it was blocked on, if any.
+    Resource removeWait(int pid) {
+        return waitingFor.remove(Integer.valueOf(pid));
+    }
+
+    public Resource waitingFor(int pid) {
+        return waitingFor.get(Integer.valueOf(pid));
+    }
+
+    // The number of processes blocked on resources.
+    public int size() {
+        return waitingFor.size();
+    }
+
+    public long checks() {
+        return checks;
+    }
+
+    public double meanProcessesVisited() {
+        return checks == 0 ? 0 : (double)processesVisited / checks;
+    }
+
+}
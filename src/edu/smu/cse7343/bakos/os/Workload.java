@@ -0,0 +1,86 @@
+/*
+    Workload.java
+    @author Yong Joseph Bakos
+
+    This class describes a synthetic workload for headless simulations: how often processes
+    arrive, how much memory their programs need, and how likely the running process is to
+    block, be unblocked, or be killed on any given cycle. It stands in for the user pressing
+    keys and clicking on processes in the visual simulation.
+*/
+
+package edu.smu.cse7343.bakos.os;
+
+import java.util.*;
+
+public class Workload {
+
+    public double arrivalRate = 0.01;       // Mean number of new processes per cycle
+    public boolean exponentialSizes = false; // Otherwise, sizes are uniformly distributed
+    public float minProgramSize = 36;
+    public float maxProgramSize = 144;
+    public float meanProgramSize = 72;      // Only used for exponentially distributed sizes
+    public double blockProbability = 0.01;  // Chance per cycle that the running process blocks
+    public double unblockProbability = 0.05; // Chance per cycle that the head of the wait queue unblocks
+    public double killRate = 0.02;          // Chance per cycle that the running process is killed
+    public double forkRate = 0;             // Chance per cycle that the running process forks
+    public double writeRate = 0;            // Chance per cycle that the running process stores a word
+    public double messageRate = 0;          // Chance per cycle that the running process sends (odd
+                                            // pids) or receives (even pids) on a pipeline queue
+    public double growRate = 0;             // Chance per cycle that the running process grows
+    public int growthSize = 8;              // Words added by each growth
+    public double lockRate = 0;             // Chance per cycle that the running process locks a shared
+                                            // mutex, or unlocks it if it is the owner, and separately,
+                                            // that it signals (odd pids) or waits on (even pids) a
+                                            // shared semaphore
+
+    // Parses a program size distribution, either `uniform:MIN:MAX` or `exponential:MEAN`.
+    public void setSizeDistribution(String spec) {
+        String[] parts = spec.split(":");
+        if (parts[0].equals("uniform") && parts.length == 3) {
+            exponentialSizes = false;
+            minProgramSize = Float.parseFloat(parts[1]);
+            maxProgramSize = Float.parseFloat(parts[2]);
+            if (minProgramSize < 1 || maxProgramSize < minProgramSize) {
+                throw new IllegalArgumentException("Uniform sizes need 1 <= MIN <= MAX: " + spec);
+            }
+        } else if (parts[0].equals("exponential") && parts.length == 2) {
+            exponentialSizes = true;
+            meanProgramSize = Float.parseFloat(parts[1]);
+            if (meanProgramSize < 1) throw new IllegalArgumentException("Exponential sizes need MEAN >= 1: " + spec);
+        } else {
+            throw new IllegalArgumentException("Unknown size distribution: " + spec);
+        }
+    }
+
+    // The number of processes arriving during one cycle, drawn from a Poisson distribution.
+    public int arrivals(Random rand) {
+        double threshold = Math.exp(-arrivalRate);
+        double product = rand.nextDouble();
+        int count = 0;
+        while (product > threshold) {
+            ++count;
+            product *= rand.nextDouble();
+        }
+        return count;
+    }
+
+    // "Loads" a program of a random size from disk, without needing a Processing context.
+    public Program nextProgram(Random rand) {
+        float size;
+        if (exponentialSizes) {
+            size = (float)Math.max(1.0, -meanProgramSize * Math.log(1.0 - rand.nextDouble()));
+        } else {
+            size = minProgramSize + rand.nextFloat() * (maxProgramSize - minProgramSize);
+        }
+        int color = 0xDC000000 | (rand.nextInt(0x1000000) | 0x969696); // translucent, light
+        return new Program(0, 0, 0, 0, 0, size, color);
+    }
+
+    public String toString() {
+        String sizes = exponentialSizes ? "exponential:" + meanProgramSize : "uniform:" + minProgramSize + ":" + maxProgramSize;
+        return "arrival=" + arrivalRate + " sizes=" + sizes + " block=" + blockProbability
+            + " unblock=" + unblockProbability + " kill=" + killRate + " fork=" + forkRate + " write=" + writeRate
+            + " message=" + messageRate + " grow=" + growRate + "x" + growthSize + " lock=" + lockRate;
+    }
+
+}
@@ -0,0 +1,83 @@
+package edu.smu.cse7343.bakos.os;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class CheckpointTest {
+
+    // A kernel with processes in every queue, a held and contended mutex, a message queue
+    // and a shared segment, after some random work.
+    private OperatingSystem busyKernel() {
+        CPU cpu = new CPU();
+        OperatingSystem os = new OperatingSystem(cpu, new Memory(200), 5);
+        os.verbose = false;
+        os.rand = new Random(1);
+        Mutex mutex = os.createMutex(1);
+        os.msgget(1, 4);
+        os.shmget(1, 10);
+        for (int i = 0; i < 8; ++i) os.exec(new Program(0, 0, 0, 0, 0, 30, 0xDC969696));
+        for (int cycle = 0; cycle < 200; ++cycle) {
+            cpu.tickTock();
+            os.manageProcesses();
+            if (cpu.isIdle) continue;
+            if (cycle % 7 == 0) os.lock(mutex);
+            else if (cycle % 11 == 0) os.send(1, cycle);
+            else if (cycle % 41 == 0) os.killCurrentProcess();
+        }
+        os.exec(new Program(0, 0, 0, 0, 0, 150, 0xDC969696)); // waits for admission
+        os.rand.nextInt();
+        assertFalse(cpu.isIdle);
+        assertNotNull(mutex.owner());
+        assertFalse(os.waitQueue.isEmpty());
+        assertFalse(os.admissionQueue.isEmpty());
+        return os;
+    }
+
+    @Test
+    public void testSaveLoadRoundTrip() throws IOException {
+        OperatingSystem os = busyKernel();
+        Path first = Files.createTempFile("checkpoint", ".ckpt");
+        Path second = Files.createTempFile("checkpoint", ".ckpt");
+        try {
+            Checkpoint.save(os, first);
+            Checkpoint checkpoint = Checkpoint.load(first);
+            OperatingSystem restored = checkpoint.os;
+            assertArrayEquals(os.memory.registers, checkpoint.memory.registers, 0);
+            assertEquals(pids(os.readyQueue), pids(restored.readyQueue));
+            assertEquals(pids(os.waitQueue), pids(restored.waitQueue));
+            assertEquals(pids(os.admissionQueue), pids(restored.admissionQueue));
+            assertEquals(os.currentProcess().pid, restored.currentProcess().pid);
+            assertEquals(os.createMutex(1).owner().pid, restored.createMutex(1).owner().pid);
+            assertEquals(os.totalFreeMemory(), restored.totalFreeMemory());
+            assertEquals(os.admissionBacklog, restored.admissionBacklog);
+            Checkpoint.save(restored, second);
+            assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+            assertEquals(os.rand.nextLong(), restored.rand.nextLong());
+        } finally {
+            Files.delete(first);
+            Files.delete(second);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadRejectsOtherFiles() throws IOException {
+        Path path = Files.createTempFile("checkpoint", ".ckpt");
+        try {
+            Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+            Checkpoint.load(path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static List<Integer> pids(ProcessQueue queue) {
+        List<Integer> pids = new ArrayList<Integer>();
+        for (ProcessControlBlock pcb : queue.queue) pids.add(Integer.valueOf(pcb.pid));
+        return pids;
+    }
+
+}
@@ -0,0 +1,95 @@
+package edu.smu.cse7343.bakos.os;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class FreeListTest {
+
+    @Test
+    public void testFreedNeighborsMergeIntoOneHole() {
+        FreeList freeList = new FreeList(new Memory(100), 0, 100);
+        assertEquals(0, freeList.alloc(10, MemoryAllocationAlgorithm.FIRST_FIT, false));
+        assertEquals(10, freeList.alloc(10, MemoryAllocationAlgorithm.FIRST_FIT, false));
+        assertEquals(20, freeList.alloc(10, MemoryAllocationAlgorithm.FIRST_FIT, false));
+        freeList.free(0, 10);
+        freeList.free(20, 10); // merges with the hole after it
+        assertEquals(2, freeList.segmentCount());
+        assertEquals(80, freeList.largestSegment());
+        freeList.free(10, 10); // merges with the holes on both sides
+        assertEquals(1, freeList.segmentCount());
+        assertEquals(100, freeList.totalFree());
+        assertEquals(100, freeList.largestSegment());
+    }
+
+    @Test
+    public void testHistogramCountsHolesByPowerOfTwo() {
+        FreeList freeList = new FreeList(new Memory(100), 0, 100);
+        for (int i = 0; i < 3; ++i) freeList.alloc(10, MemoryAllocationAlgorithm.FIRST_FIT, false);
+        freeList.free(10, 10);
+        int[] histogram = freeList.histogram();
+        assertEquals(FreeList.HISTOGRAM_BUCKETS, histogram.length);
+        assertEquals(1, histogram[3]); // the 10 word hole
+        assertEquals(1, histogram[6]); // the 70 word hole
+        int holes = 0;
+        for (int count : histogram) holes += count;
+        assertEquals(freeList.segmentCount(), holes);
+        assertEquals(1 - 70.0 / 80, freeList.externalFragmentation(), 1e-9);
+    }
+
+    @Test
+    public void testBestAndWorstFitChooseHolesBySize() {
+        FreeList freeList = new FreeList(new Memory(100));
+        freeList.free(0, 10);
+        freeList.free(20, 30);
+        freeList.free(60, 20);
+        assertEquals(60, freeList.alloc(15, MemoryAllocationAlgorithm.BEST_FIT, false));
+        assertEquals(20, freeList.alloc(5, MemoryAllocationAlgorithm.WORST_FIT, false));
+        assertEquals(0, freeList.alloc(5, MemoryAllocationAlgorithm.FIRST_FIT, false));
+        assertEquals(-1, freeList.alloc(26, MemoryAllocationAlgorithm.BEST_FIT, false));
+        assertEquals(5 + 25 + 5, freeList.totalFree());
+    }
+
+    @Test
+    public void testFreedWordsStayDirtyUntilZeroed() {
+        Memory memory = new Memory(100);
+        FreeList freeList = new FreeList(memory, 0, 100);
+        assertEquals(0, freeList.dirtyWords());
+        int base = freeList.alloc(40, MemoryAllocationAlgorithm.FIRST_FIT, false);
+        for (int i = base; i < base + 40; ++i) memory.write(i, 1);
+        freeList.free(base, 40);
+        assertEquals(40, freeList.dirtyWords());
+        assertEquals(60, freeList.preZeroed());
+        assertEquals(1, memory.read(0), 0);
+        assertEquals(40, freeList.zeroDirty(100));
+        assertEquals(0, freeList.dirtyWords());
+        assertEquals(100, freeList.preZeroed());
+        for (int i = 0; i < 40; ++i) assertEquals(0, memory.read(i), 0);
+        assertEquals(0, freeList.zeroDirty(100));
+    }
+
+    @Test
+    public void testZeroedAllocationsPreferCleanHoles() {
+        Memory memory = new Memory(100);
+        FreeList freeList = new FreeList(memory, 0, 100);
+        freeList.alloc(20, MemoryAllocationAlgorithm.FIRST_FIT, false);
+        freeList.alloc(20, MemoryAllocationAlgorithm.FIRST_FIT, false);
+        freeList.free(0, 20); // dirty, ahead of the clean hole at 40
+        assertEquals(40, freeList.alloc(10, MemoryAllocationAlgorithm.FIRST_FIT, true));
+        assertEquals(20, freeList.dirtyWords());
+        // an allocation that overwrites its words takes dirty ones without zeroing them
+        assertEquals(0, freeList.alloc(10, MemoryAllocationAlgorithm.FIRST_FIT, false));
+        assertEquals(10, freeList.dirtyWords());
+        assertEquals(0, freeList.wordsZeroed);
+    }
+
+    @Test
+    public void testEmptyRangesAreIgnored() {
+        FreeList freeList = new FreeList(new Memory(100), 0, 50);
+        freeList.free(60, 0);
+        freeList.markDirty(70, 0);
+        assertEquals(1, freeList.segmentCount());
+        assertEquals(0, freeList.dirtyWords());
+        assertTrue(freeList.dirty.isEmpty());
+    }
+
+}
@@ -0,0 +1,150 @@
+package edu.smu.cse7343.bakos.os;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class LockTest {
+
+    private CPU cpu = new CPU();
+    private OperatingSystem os = new OperatingSystem(cpu, new Memory(100), 1);
+
+    public LockTest() {
+        os.verbose = false;
+    }
+
+    private ProcessControlBlock exec(int priority) {
+        ProcessControlBlock pcb = os.exec(new Program(0, 0, 0, 0, 0, 5, 0xDC969696));
+        pcb.setPriority(priority);
+        return pcb;
+    }
+
+    // Runs the kernel until the process is on the CPU.
+    private void runUntil(ProcessControlBlock pcb) {
+        for (int cycle = 0; os.currentProcess() != pcb; ++cycle) {
+            assertTrue("Process " + pcb.pid + " never ran", cycle < 100);
+            cpu.tickTock();
+            os.manageProcesses();
+        }
+    }
+
+    @Test
+    public void testUncontendedLockTakesTheFastPath() {
+        ProcessControlBlock pcb = exec(0);
+        Mutex mutex = os.createMutex(1);
+        runUntil(pcb);
+        assertTrue(os.lock(mutex));
+        assertSame(pcb, mutex.owner());
+        assertTrue(os.unlock(mutex));
+        assertNull(mutex.owner());
+        assertEquals(2, mutex.fastOperations());
+        assertEquals(0, mutex.slowOperations());
+    }
+
+    @Test
+    public void testUnlockHandsTheMutexToAWaiter() {
+        ProcessControlBlock owner = exec(0);
+        ProcessControlBlock waiter = exec(0);
+        Mutex mutex = os.createMutex(1);
+        runUntil(owner);
+        assertTrue(os.lock(mutex));
+        runUntil(waiter);
+        assertFalse(os.lock(mutex));
+        assertEquals(ProcessState.WAITING, waiter.state);
+        assertEquals(-1, mutex.value());
+        runUntil(owner);
+        assertTrue(os.unlock(mutex));
+        assertSame(waiter, mutex.owner());
+        assertEquals(ProcessState.READY, waiter.state);
+        assertEquals(0, mutex.value());
+    }
+
+    @Test
+    public void testOnlyTheOwnerMayUnlock() {
+        ProcessControlBlock owner = exec(0);
+        ProcessControlBlock other = exec(0);
+        Mutex mutex = os.createMutex(1);
+        runUntil(owner);
+        os.lock(mutex);
+        runUntil(other);
+        assertFalse(os.unlock(mutex));
+        assertSame(owner, mutex.owner());
+    }
+
+    @Test
+    public void testInterruptCancelsALockWait() {
+        ProcessControlBlock owner = exec(0);
+        ProcessControlBlock waiter = exec(0);
+        Mutex mutex = os.createMutex(1);
+        runUntil(owner);
+        os.lock(mutex);
+        runUntil(waiter);
+        os.lock(mutex);
+        os.interruptAndUnblock(waiter);
+        assertEquals(ProcessState.READY, waiter.state);
+        assertTrue(mutex.waiters.isEmpty());
+        assertEquals(0, mutex.value());
+        runUntil(owner);
+        os.unlock(mutex);
+        assertNull(mutex.owner());
+        assertEquals(1, mutex.value());
+    }
+
+    @Test
+    public void testOwnerInheritsThePriorityOfAWaiter() {
+        os.priorityScheduling = os.priorityInheritance = true;
+        ProcessControlBlock low = exec(1);
+        ProcessControlBlock high = exec(9);
+        Mutex mutex = os.createMutex(1);
+        runUntil(high);
+        os.blockCurrentProcess();
+        runUntil(low);
+        os.lock(mutex);
+        os.interruptAndUnblock(high);
+        runUntil(high);
+        assertFalse(os.lock(mutex));
+        assertEquals(9, low.priority);
+        assertSame(low, os.currentProcess());
+        os.unlock(mutex);
+        assertEquals(1, low.priority);
+        assertSame(high, mutex.owner());
+    }
+
+    @Test
+    public void testCancelledWaitDropsTheInheritedPriority() {
+        os.priorityScheduling = os.priorityInheritance = true;
+        ProcessControlBlock low = exec(1);
+        ProcessControlBlock high = exec(9);
+        Mutex mutex = os.createMutex(1);
+        runUntil(high);
+        os.blockCurrentProcess();
+        runUntil(low);
+        os.lock(mutex);
+        os.interruptAndUnblock(high);
+        runUntil(high);
+        os.lock(mutex);
+        assertEquals(9, low.priority);
+        os.interruptAndUnblock(high);
+        assertEquals(1, low.priority);
+        assertEquals(1, low.basePriority);
+    }
+
+    @Test
+    public void testSemaphoreHandsUnitsToWaitersInOrder() {
+        ProcessControlBlock first = exec(0);
+        ProcessControlBlock second = exec(0);
+        Semaphore semaphore = os.createSemaphore(1, 0);
+        runUntil(first);
+        assertFalse(os.down(semaphore));
+        runUntil(second);
+        assertFalse(os.down(semaphore));
+        assertEquals(-2, semaphore.value());
+        os.up(semaphore);
+        assertEquals(ProcessState.READY, first.state);
+        assertEquals(ProcessState.WAITING, second.state);
+        os.up(semaphore);
+        assertEquals(ProcessState.READY, second.state);
+        os.up(semaphore);
+        assertEquals(1, semaphore.value());
+    }
+
+}
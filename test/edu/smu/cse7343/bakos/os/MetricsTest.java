@@ -0,0 +1,95 @@
+package edu.smu.cse7343.bakos.os;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class MetricsTest {
+
+    private static final int CYCLES = 100000; // more than one block of rows
+
+    // Records a run, keeping the free memory column aside to compare with what is read back.
+    private long[] record(Path path, int sampleInterval) throws IOException {
+        CPU cpu = new CPU();
+        OperatingSystem os = new OperatingSystem(cpu, new Memory(1000), 30);
+        os.verbose = false;
+        Random rand = new Random(1);
+        long[] free = new long[CYCLES / sampleInterval + 1];
+        int rows = 0;
+        MetricsRecorder recorder = new MetricsRecorder(path, sampleInterval);
+        for (int cycle = 0; cycle < CYCLES; ++cycle) {
+            cpu.tickTock();
+            os.manageProcesses();
+            if (cpu.cycleCount % sampleInterval == 0) free[rows++] = os.totalFreeMemory();
+            recorder.record(cpu, os);
+            if (rand.nextDouble() < 0.02) os.exec(new Program(0, 0, 0, 0, 0, 10 + rand.nextInt(100), 0xDC969696));
+            if (!cpu.isIdle && rand.nextDouble() < 0.02) os.killCurrentProcess();
+        }
+        recorder.close();
+        assertEquals(rows, recorder.rowsRecorded());
+        assertEquals(Files.size(path), recorder.bytesWritten());
+        return Arrays.copyOf(free, rows);
+    }
+
+    @Test
+    public void testRecordedColumnsReadBack() throws IOException {
+        Path path = Files.createTempFile("metrics", ".metrics");
+        try {
+            long[] free = record(path, 1);
+            assertEquals(Arrays.asList(MetricsRecorder.COLUMNS), MetricsReader.columnNames(path));
+            assertEquals(free.length, MetricsReader.rowCount(path));
+            Map<String, long[]> columns = MetricsReader.read(path, "free", "cycle");
+            assertEquals(Arrays.asList("free", "cycle"), new ArrayList<String>(columns.keySet()));
+            assertArrayEquals(free, columns.get("free"));
+            long[] cycles = columns.get("cycle");
+            for (int row = 0; row < cycles.length; ++row) assertEquals(row + 1, cycles[row]);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testRangesReadAcrossBlocks() throws IOException {
+        Path path = Files.createTempFile("metrics", ".metrics");
+        try {
+            long[] free = record(path, 1);
+            long[] range = MetricsReader.read(path, 65530, 20, "free").get("free");
+            assertArrayEquals(Arrays.copyOfRange(free, 65530, 65550), range);
+            long[] tail = MetricsReader.read(path, free.length - 5, 100, "free").get("free");
+            assertArrayEquals(Arrays.copyOfRange(free, free.length - 5, free.length), tail);
+            assertEquals(0, MetricsReader.read(path, free.length, 100, "free").get("free").length);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testSampleInterval() throws IOException {
+        Path path = Files.createTempFile("metrics", ".metrics");
+        try {
+            long[] free = record(path, 10);
+            assertEquals(CYCLES / 10, free.length);
+            long[] cycles = MetricsReader.read(path, "cycle").get("cycle");
+            assertEquals(free.length, cycles.length);
+            assertEquals(10, cycles[0]);
+            assertEquals(CYCLES, cycles[cycles.length - 1]);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadRejectsUnknownColumns() throws IOException {
+        Path path = Files.createTempFile("metrics", ".metrics");
+        try {
+            new MetricsRecorder(path, 1).close();
+            MetricsReader.read(path, "cycle", "bogus");
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+}